@@ -70,6 +70,7 @@ public class B_PointBenchmark_JMH {
                 //.addProfiler("xperfasm") // for Windows
                 //.addProfiler("perfasm") // for Linux
                 //.addProfiler("dtraceasm") // for macOS (required root)
+                //.addProfiler("com.github.andrebrait.workshops.jmh.profilers.JfrSummaryProfiler") // JFR, for any OS
                 //.jvmArgsAppend("-XX:LoopUnrollLimit=1", "-XX:-TieredCompilation") // simplify assembly, keep unrolling to a minimum and enforce tiered compilation with the final optimizing compiler
                 .include(regex).build();
         Runner runner = new Runner(options);
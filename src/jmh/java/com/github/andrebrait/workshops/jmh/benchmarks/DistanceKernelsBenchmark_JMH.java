@@ -0,0 +1,112 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.ScalarDistanceKernels;
+import com.github.andrebrait.workshops.jmh.domain.VectorDistanceKernels;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar loops of {@link ScalarDistanceKernels} with the Vector API versions of
+ * {@link VectorDistanceKernels}, from arrays which fit in the L1 cache to arrays which only fit in memory.
+ *
+ * <p>The results are written to an array in the state, so there's nothing to consume. Look at the time per element:
+ * with large arrays, both versions end up waiting for memory, and the difference gets much smaller.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DistanceKernelsBenchmark_JMH {
+
+    @State(Scope.Benchmark)
+    public static class Arrays {
+        @Param({"64", "4096", "262144", "4194304"})
+        private int size;
+
+        private int[] xs, ys;
+        private int tx, ty;
+        private double[] x1, y1, x2, y2;
+        private double[] results;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Random random = ThreadLocalRandom.current();
+            xs = new int[size];
+            ys = new int[size];
+            x1 = new double[size];
+            y1 = new double[size];
+            x2 = new double[size];
+            y2 = new double[size];
+            results = new double[size];
+            for (int i = 0; i < size; i++) {
+                xs[i] = random.nextInt(200);
+                ys[i] = random.nextInt(200);
+                x1[i] = random.nextDouble();
+                y1[i] = random.nextDouble();
+                x2[i] = random.nextDouble();
+                y2[i] = random.nextDouble();
+            }
+            tx = random.nextInt(200);
+            ty = random.nextInt(200);
+        }
+    }
+
+    @Benchmark
+    public void accurate_scalar(Arrays a) {
+        ScalarDistanceKernels.accurate(a.xs, a.ys, a.tx, a.ty, a.results);
+    }
+
+    @Benchmark
+    public void accurate_vector(Arrays a) {
+        VectorDistanceKernels.accurate(a.xs, a.ys, a.tx, a.ty, a.results);
+    }
+
+    @Benchmark
+    public void fast_scalar(Arrays a) {
+        ScalarDistanceKernels.fast(a.xs, a.ys, a.tx, a.ty, a.results);
+    }
+
+    @Benchmark
+    public void fast_vector(Arrays a) {
+        VectorDistanceKernels.fast(a.xs, a.ys, a.tx, a.ty, a.results);
+    }
+
+    @Benchmark
+    public void bob_scalar(Arrays a) {
+        ScalarDistanceKernels.bob(a.x1, a.y1, a.x2, a.y2, a.results);
+    }
+
+    @Benchmark
+    public void bob_vector(Arrays a) {
+        VectorDistanceKernels.bob(a.x1, a.y1, a.x2, a.y2, a.results);
+    }
+
+    @Benchmark
+    public void joe_scalar(Arrays a) {
+        ScalarDistanceKernels.joe(a.x1, a.y1, a.x2, a.y2, a.results);
+    }
+
+    @Benchmark
+    public void joe_vector(Arrays a) {
+        VectorDistanceKernels.joe(a.x1, a.y1, a.x2, a.y2, a.results);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String regex = "^\\Q%s.\\E.*".formatted(DistanceKernelsBenchmark_JMH.class.getName());
+        Options options = new OptionsBuilder()
+                //.addProfiler("perfasm") // for Linux, to check which loops were vectorized
+                //.addProfiler("com.github.andrebrait.workshops.jmh.profilers.JfrSummaryProfiler") // JFR, for any OS
+                //.jvmArgsAppend("-XX:-UseSuperWord") // keep the JIT compiler from vectorizing the scalar loops
+                .include(regex).build();
+        Runner runner = new Runner(options);
+        runner.run();
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the all-pairs distance matrix of {@link DistanceMatrix} scales with the number of threads and of
+ * points, compared with a nested loop of {@link AccuratePoint#distance(Coordinate)} calls.
+ *
+ * <p>The matrix is allocated once per trial and reused, so the allocation (and zeroing) of up to 800 MB is not
+ * measured. The nested loop only depends on the number of points, so it doesn't run once per number of threads.
+ * Don't expect much from more threads than physical cores (see {@code SystemInfoUtils.printSystemInfo()}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "--add-modules", "jdk.incubator.vector"})
+public class DistanceMatrixBenchmark_JMH {
+
+    @State(Scope.Benchmark)
+    public static class Points {
+        @Param({"1000", "4000", "10000"})
+        private int size;
+
+        private PointBatch batch;
+        private Point[] points;
+        private double[] matrix;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Random random = ThreadLocalRandom.current();
+            int[] xs = new int[size];
+            int[] ys = new int[size];
+            points = new Point[size];
+            for (int i = 0; i < size; i++) {
+                xs[i] = random.nextInt(1000);
+                ys[i] = random.nextInt(1000);
+                points[i] = new AccuratePoint(xs[i], ys[i]);
+            }
+            batch = new PointBatch(xs, ys);
+            matrix = new double[size * size];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pool {
+        @Param({"1", "2", "4", "8"})
+        private int threads;
+
+        private ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            pool = new ForkJoinPool(threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public double[] nested_loop(Points p) {
+        Point[] points = p.points;
+        double[] matrix = p.matrix;
+        int n = points.length;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                matrix[i * n + j] = points[i].distance(points[j]);
+            }
+        }
+        return matrix;
+    }
+
+    @Benchmark
+    public double[] tiled(Points p, Pool pool) {
+        DistanceMatrix.compute(p.batch, pool.pool, p.matrix);
+        return p.matrix;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String regex = "^\\Q%s.\\E.*".formatted(DistanceMatrixBenchmark_JMH.class.getName());
+        Options options = new OptionsBuilder()
+                //.addProfiler("gc")
+                //.addProfiler("com.github.andrebrait.workshops.jmh.profilers.JfrSummaryProfiler") // JFR, for any OS
+                .include(regex).build();
+        Runner runner = new Runner(options);
+        runner.run();
+    }
+}
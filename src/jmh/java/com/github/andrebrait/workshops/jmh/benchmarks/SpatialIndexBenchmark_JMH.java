@@ -0,0 +1,103 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the nearest, k-nearest and radius queries of a {@link KdTree} and a {@link GridIndex} with a
+ * {@link BruteForceIndex}, from 1K to 10M points spread evenly over a square.
+ *
+ * <p>The queries cycle through a fixed set of random targets, so the branch predictor can't learn a single one.
+ * The radius is chosen so each query finds about {@value #RADIUS_NEIGHBOURS} points, whatever the number of points.
+ * The indexes are built once per trial, so building them is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SpatialIndexBenchmark_JMH {
+
+    private static final int AREA_SIDE = 1_000_000;
+    private static final int TARGETS = 1024;
+    private static final int K = 10;
+    private static final int RADIUS_NEIGHBOURS = 10;
+
+    @State(Scope.Thread)
+    public static class Queries {
+        @Param({"1000", "100000", "10000000"})
+        private int size;
+
+        @Param({"brute_force", "kd_tree", "grid"})
+        private String index;
+
+        private SpatialIndex spatialIndex;
+        private Coordinate[] targets;
+        private double radius;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Random random = ThreadLocalRandom.current();
+            int[] xs = new int[size];
+            int[] ys = new int[size];
+            for (int i = 0; i < size; i++) {
+                xs[i] = random.nextInt(AREA_SIDE);
+                ys[i] = random.nextInt(AREA_SIDE);
+            }
+            PointBatch batch = new PointBatch(xs, ys);
+            spatialIndex = switch (index) {
+                case "brute_force" -> new BruteForceIndex(batch);
+                case "kd_tree" -> new KdTree(batch);
+                case "grid" -> new GridIndex(batch);
+                default -> throw new IllegalArgumentException("Unknown index: %s".formatted(index));
+            };
+            targets = new Coordinate[TARGETS];
+            for (int i = 0; i < TARGETS; i++) {
+                targets[i] = new RawCoordinate(random.nextInt(AREA_SIDE), random.nextInt(AREA_SIDE));
+            }
+            // pi * radius^2 * density = RADIUS_NEIGHBOURS
+            double density = (double) size / ((double) AREA_SIDE * AREA_SIDE);
+            radius = Math.sqrt(RADIUS_NEIGHBOURS / (Math.PI * density));
+        }
+
+        private Coordinate nextTarget() {
+            Coordinate target = targets[next];
+            next = (next + 1) & (TARGETS - 1);
+            return target;
+        }
+    }
+
+    @Benchmark
+    public int nearest(Queries queries) {
+        return queries.spatialIndex.nearest(queries.nextTarget());
+    }
+
+    @Benchmark
+    public int[] k_nearest(Queries queries) {
+        return queries.spatialIndex.nearest(queries.nextTarget(), K);
+    }
+
+    @Benchmark
+    public int[] within_radius(Queries queries) {
+        return queries.spatialIndex.withinRadius(queries.nextTarget(), queries.radius);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String regex = "^\\Q%s.\\E.*".formatted(SpatialIndexBenchmark_JMH.class.getName());
+        Options options = new OptionsBuilder()
+                //.addProfiler("gc")
+                //.addProfiler("com.github.andrebrait.workshops.jmh.profilers.JfrSummaryProfiler") // JFR, for any OS
+                .include(regex).build();
+        Runner runner = new Runner(options);
+        runner.run();
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.andrebrait.workshops.jmh.presentation.jitdemo;
+
+import com.github.andrebrait.workshops.jmh.benchmarks.B_PointBenchmark_JMH;
+import com.github.andrebrait.workshops.jmh.presentation.SuperDuperBenchmark_JMH;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+
+/**
+ * Runs the same benchmarks under different JIT configurations, each in its own forks, and prints their scores
+ * side by side:
+ * <ul>
+ *     <li>{@code interpreter}: {@code -Xint}, no JIT compilation at all</li>
+ *     <li>{@code c1}: {@code -XX:TieredStopAtLevel=1}, only the quick, less optimizing C1 compiler</li>
+ *     <li>{@code tiered}: the default, C1 first and C2 for the hottest code</li>
+ *     <li>{@code c2}: {@code -XX:-TieredCompilation}, only C2 (after a longer time in the interpreter)</li>
+ * </ul>
+ *
+ * <p>Usage: {@code JitTierComparison [class...]}, where each argument is the fully qualified name of a class with
+ * JMH benchmarks. By default, it runs {@link SuperDuperBenchmark_JMH} and {@link B_PointBenchmark_JMH}.
+ * The settings (iterations, forks, JVM arguments, etc.) are taken from the annotations of each class.
+ *
+ * <p>The interpreter can be a few orders of magnitude slower than the compiled code, so the iterations of the
+ * benchmarks in that configuration complete far fewer operations.
+ */
+public final class JitTierComparison {
+
+    enum Tier {
+        interpreter("-Xint"),
+        c1("-XX:TieredStopAtLevel=1"),
+        tiered(),
+        c2("-XX:-TieredCompilation");
+
+        private final String[] jvmArgs;
+
+        Tier(String... jvmArgs) {
+            this.jvmArgs = jvmArgs;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        List<String> classes = args.length > 0
+                ? List.of(args)
+                : List.of(SuperDuperBenchmark_JMH.class.getName(), B_PointBenchmark_JMH.class.getName());
+        // benchmark (with its parameters) -> tier -> result
+        Map<String, Map<Tier, Result<?>>> results = new LinkedHashMap<>();
+        for (Tier tier : Tier.values()) {
+            System.out.printf("# JIT configuration: %s %s%n", tier, Arrays.toString(tier.jvmArgs));
+            ChainedOptionsBuilder options = new OptionsBuilder();
+            if (tier.jvmArgs.length > 0) {
+                // any JVM arguments set here replace those of the same kind in @Fork, and the benchmarks use
+                // jvmArgsAppend (e.g. for the heap size), so these go first instead
+                options.jvmArgsPrepend(tier.jvmArgs);
+            }
+            for (String className : classes) {
+                options.include("^\\Q%s.\\E.*".formatted(className));
+            }
+            Collection<RunResult> runResults = new Runner(options.build()).run();
+            for (RunResult runResult : runResults) {
+                results.computeIfAbsent(label(runResult.getParams()), k -> new EnumMap<>(Tier.class))
+                        .put(tier, runResult.getPrimaryResult());
+            }
+        }
+        print(results);
+    }
+
+    private static String label(BenchmarkParams params) {
+        String benchmark = params.getBenchmark();
+        // keep only the class and method names
+        int classStart = benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1;
+        StringJoiner label = new StringJoiner(", ", benchmark.substring(classStart) + " (", ")")
+                .setEmptyValue(benchmark.substring(classStart));
+        for (String key : params.getParamsKeys()) {
+            label.add("%s = %s".formatted(key, params.getParam(key)));
+        }
+        return label.toString();
+    }
+
+    private static void print(Map<String, Map<Tier, Result<?>>> results) {
+        int labelWidth = "Benchmark".length();
+        int scoreWidth = 0;
+        for (Map.Entry<String, Map<Tier, Result<?>>> entry : results.entrySet()) {
+            labelWidth = Math.max(labelWidth, entry.getKey().length());
+            for (Result<?> result : entry.getValue().values()) {
+                scoreWidth = Math.max(scoreWidth, format(result).length());
+            }
+        }
+        StringBuilder format = new StringBuilder("%-" + labelWidth + "s");
+        List<Object> header = new ArrayList<>(List.of("Benchmark"));
+        for (Tier tier : Tier.values()) {
+            format.append("  %").append(Math.max(scoreWidth, tier.name().length())).append('s');
+            header.add(tier.name());
+        }
+        format.append("  %s%n");
+        header.add("Units");
+        System.out.println();
+        System.out.printf(format.toString(), header.toArray());
+        results.forEach((label, byTier) -> {
+            List<Object> row = new ArrayList<>(List.of(label));
+            String unit = "";
+            for (Tier tier : Tier.values()) {
+                Result<?> result = byTier.get(tier);
+                row.add(result == null ? "N/A" : format(result));
+                unit = result == null ? unit : result.getScoreUnit();
+            }
+            row.add(unit);
+            System.out.printf(format.toString(), row.toArray());
+        });
+    }
+
+    private static String format(Result<?> result) {
+        return Double.isNaN(result.getScoreError())
+                ? "%.3f".formatted(result.getScore())
+                : "%.3f ± %.3f".formatted(result.getScore(), result.getScoreError());
+    }
+
+    private JitTierComparison() {
+        // this is a utility class
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.andrebrait.workshops.jmh.profilers;
+
+import com.github.andrebrait.workshops.jmh.framework.JfrProfile;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.TextResult;
+import org.openjdk.jmh.runner.IterationType;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JMH profiler which records the measurement iterations of each fork with JDK Flight Recorder and prints the hot
+ * methods, allocation sites and deoptimizations (see {@link JfrProfile}).
+ *
+ * <p>Unlike {@code perfasm}, {@code xperfasm} and {@code dtraceasm}, it needs neither {@code perf} nor root, so it
+ * works on any OS. It doesn't show the generated assembly, though, only which methods were running.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * Options options = new OptionsBuilder()
+ *         .addProfiler(JfrSummaryProfiler.class)
+ *         .include(regex).build();
+ * }</pre>
+ */
+public final class JfrSummaryProfiler implements InternalProfiler {
+
+    private JfrProfile profile;
+    private int measured;
+
+    @Override
+    public String getDescription() {
+        return "JFR hot methods, allocation sites and deoptimizations of the measurement iterations";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        if (iterationParams.getType() == IterationType.MEASUREMENT && profile == null) {
+            profile = JfrProfile.start();
+        }
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(
+            BenchmarkParams benchmarkParams,
+            IterationParams iterationParams,
+            IterationResult result) {
+        if (iterationParams.getType() != IterationType.MEASUREMENT
+                || ++measured < iterationParams.getCount()
+                || profile == null) {
+            return List.of();
+        }
+        String summary = profile.stop();
+        profile = null;
+        measured = 0;
+        return List.of(new TextResult(summary, "jfr"));
+    }
+}
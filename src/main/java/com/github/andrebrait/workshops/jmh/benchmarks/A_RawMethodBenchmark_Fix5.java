@@ -2,6 +2,7 @@ package com.github.andrebrait.workshops.jmh.benchmarks;
 
 import com.github.andrebrait.workshops.jmh.framework.BenchToDoubleFunction;
 import com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework;
+import com.github.andrebrait.workshops.jmh.framework.Blackhole;
 
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
@@ -11,12 +12,14 @@ import static com.github.andrebrait.workshops.jmh.utils.InputUtils.select;
 
 /**
  * "Naive" benchmark with just static methods which can only execute one test at a time and
- * has "random" parameters, with the result being consumed in a "blackhole" so the compiler
- * can't remove the invocation altogether. This version also avoids the costs of boxing/unboxing,
- * but it runs into a combination of inlining, unrolling and dead-code elimination with some escape
- * analysis around the fact it's a primitive instead of an object.
+ * has "random" parameters, with the result being consumed in a {@link Blackhole} so the compiler
+ * can't remove the invocation altogether. This version also avoids the costs of boxing/unboxing.
+ * <p>
+ * Storing the result in a primitive field instead runs into a combination of inlining, unrolling and
+ * dead-code elimination, as only the last value stored is ever read, and storing it in a {@code Double}
+ * field only avoids that by paying for the boxing. The {@link Blackhole} is the fix: it uses every result
+ * without boxing it, so each invocation must be computed and nothing is allocated.
  * <p>
- * Honestly, I have no idea.
  * One more reason not to code your own benchmarks.
  */
 public final class A_RawMethodBenchmark_Fix5 {
@@ -25,8 +28,8 @@ public final class A_RawMethodBenchmark_Fix5 {
         distance, constant
     }
 
-    // if this is unboxed, it'll be optimized away
-    private static Double last = 0.0d;
+    // consumes every result without boxing it, so neither the boxing nor dead-code elimination skew the results
+    private static final Blackhole BLACKHOLE = new Blackhole();
 
     private record Operands(double x1, double y1, double x2, double y2) {
         static Operands random() {
@@ -63,8 +66,7 @@ public final class A_RawMethodBenchmark_Fix5 {
                 WARMUP,
                 REPEAT,
                 Operands::random,
-                r -> last = r,
+                BLACKHOLE::consume,
                 benchmarkMethod);
-        System.out.printf("Last result: %f%n", last);
     }
 }
@@ -2,19 +2,24 @@ package com.github.andrebrait.workshops.jmh.benchmarks;
 
 import com.github.andrebrait.workshops.jmh.domain.*;
 import com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework;
+import com.github.andrebrait.workshops.jmh.framework.Calibration;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.AUTO_LOOP;
 
 /**
  * "Naive" benchmark with a slightly more complex class hierarchy
  * and direct object usage to avoid using {@link Runnable}.
  *
  * <p>This demonstrates the problem does not lie in using Runnables or other functional interfaces.
+ *
+ * <p>The result of {@code distance} is never used, so the JIT may remove the call as dead code. The loop is
+ * calibrated on the same bare call, so the calibration measures exactly what the loop runs.
  */
 public final class D_PointDirectBenchmark {
 
     private static final long RUN_MILLIS = 2000;
     private static final int REPEAT = 3;
     private static final int WARMUP = 2;
-    private static final int LOOP = 10_000;
 
     /**
      * A copy of {@link BenchmarkFramework#bench(String, long, int, int, int, com.github.andrebrait.workshops.jmh.framework.BenchRunnable)}
@@ -23,6 +28,9 @@ public final class D_PointDirectBenchmark {
     private static void bench(
             String name, long runMillis, int loop, int warmup, int repeat, Point point) {
         System.out.printf("Running: %s%n", name);
+        if (loop == AUTO_LOOP) {
+            loop = Calibration.loop(() -> point.distance(point));
+        }
         int max = repeat + warmup;
         long averageThroughput = 0L;
         double averageTimePerOp = 0.0d;
@@ -57,9 +65,9 @@ public final class D_PointDirectBenchmark {
 
     public static void main(String[] args) {
         //SystemInfoUtils.printSystemInfo();
-        bench("point_accurate", RUN_MILLIS, LOOP, WARMUP, REPEAT, new AccuratePoint(10, 10));
-        bench("point_fast", RUN_MILLIS, LOOP, WARMUP, REPEAT, new FastPoint(10, 10));
-        bench("point_super_fast", RUN_MILLIS, LOOP, WARMUP, REPEAT, new SuperFastPoint(10, 10));
-        bench("point_fixed", RUN_MILLIS, LOOP, WARMUP, REPEAT, new FixedPoint(10, 10));
+        bench("point_accurate", RUN_MILLIS, AUTO_LOOP, WARMUP, REPEAT, new AccuratePoint(10, 10));
+        bench("point_fast", RUN_MILLIS, AUTO_LOOP, WARMUP, REPEAT, new FastPoint(10, 10));
+        bench("point_super_fast", RUN_MILLIS, AUTO_LOOP, WARMUP, REPEAT, new SuperFastPoint(10, 10));
+        bench("point_fixed", RUN_MILLIS, AUTO_LOOP, WARMUP, REPEAT, new FixedPoint(10, 10));
     }
 }
@@ -0,0 +1,43 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.*;
+
+/**
+ * "Naive" benchmark with a slightly more complex class hierarchy, object reuse and
+ * an increasing number of threads, from a single thread up to one thread per available processor.
+ */
+public final class E_PointThreadsBenchmark {
+
+    private static void bench_accurate_threads(int threads) {
+        bench_threads("point_accurate", threads, new AccuratePoint(0, 0), new AccuratePoint(10, 10));
+    }
+
+    private static void bench_fast_threads(int threads) {
+        bench_threads("point_fast", threads, new FastPoint(0, 0), new FastPoint(10, 10));
+    }
+
+    private static void bench_super_fast_threads(int threads) {
+        bench_threads("point_super_fast", threads, new SuperFastPoint(0, 0), new SuperFastPoint(10, 10));
+    }
+
+    private static void bench_threads(String name, int threads, Point a, Point b) {
+        benchThreadsDouble(name, RUN_MILLIS, LOOP, WARMUP, REPEAT, threads, () -> b, a::distance);
+    }
+
+    private static void bench_all(int threads) {
+        bench_accurate_threads(threads);
+        bench_fast_threads(threads);
+        bench_super_fast_threads(threads);
+    }
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            bench_all(threads);
+        }
+        bench_all(processors);
+    }
+}
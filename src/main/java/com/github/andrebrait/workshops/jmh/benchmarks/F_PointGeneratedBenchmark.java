@@ -0,0 +1,43 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import com.github.andrebrait.workshops.jmh.framework.NaiveBenchmark;
+
+/**
+ * "Naive" benchmark with the same benchmarks as {@link B_PointBenchmark}, but with a measurement loop generated
+ * for each of them (see {@link NaiveBenchmark}).
+ *
+ * <p>As the benchmarks don't share the call site anymore, the results don't depend on the order they run in.
+ */
+public final class F_PointGeneratedBenchmark {
+
+    @NaiveBenchmark(name = "point_accurate")
+    static double accurate() {
+        return new AccuratePoint(0, 0).distance(new AccuratePoint(10, 10));
+    }
+
+    @NaiveBenchmark(name = "point_accurate_raw")
+    static double accurateRaw() {
+        return new AccuratePoint(0, 0).distance(new RawCoordinate(10, 10));
+    }
+
+    @NaiveBenchmark(name = "point_fast")
+    static double fast() {
+        return new FastPoint(0, 0).distance(new FastPoint(10, 10));
+    }
+
+    @NaiveBenchmark(name = "point_super_fast")
+    static double superFast() {
+        return new SuperFastPoint(0, 0).distance(new SuperFastPoint(10, 10));
+    }
+
+    @NaiveBenchmark(name = "point_fixed")
+    static double fixed() {
+        return new FixedPoint(0, 0).distance(new FixedPoint(10, 10));
+    }
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        F_PointGeneratedBenchmark_NaiveBenchmarks.main(args);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework;
+import com.github.andrebrait.workshops.jmh.framework.Blackhole;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix.Param;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.*;
+
+/**
+ * "Naive" benchmark which sweeps the number of points for each kind of {@link Point}, running every combination
+ * unattended with a {@link ParameterMatrix}.
+ *
+ * <p>Each operation walks the whole array, so look at the time per point, not per operation: once the points don't
+ * fit in the caches anymore, the time per point goes up, even though the code doing the math is the same.
+ */
+public final class G_PointSizesBenchmark {
+
+    private static final Blackhole BLACKHOLE = new Blackhole();
+
+    private static Point[] points(String type, int size) {
+        BiFunction<Integer, Integer, Point> factory = switch (type) {
+            case "accurate" -> AccuratePoint::new;
+            case "fast" -> FastPoint::new;
+            case "super_fast" -> SuperFastPoint::new;
+            case "fixed" -> FixedPoint::new;
+            default -> throw new IllegalArgumentException("Unknown point type: %s".formatted(type));
+        };
+        Random random = ThreadLocalRandom.current();
+        Point[] points = new Point[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = factory.apply(random.nextInt(1000), random.nextInt(1000));
+        }
+        return points;
+    }
+
+    private static double totalDistance(Point[] points) {
+        double total = 0.0d;
+        for (int i = 1; i < points.length; i++) {
+            total += points[i - 1].distance(points[i]);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        ParameterMatrix.run(
+                List.of(
+                        Param.of("type", "accurate", "fast", "super_fast", "fixed"),
+                        Param.of("size", "1000", "100000", "10000000")),
+                params -> BenchmarkFramework.benchDouble(
+                        "total_distance",
+                        RUN_MILLIS,
+                        1,
+                        WARMUP,
+                        REPEAT,
+                        () -> points(params.get("type"), params.getInt("size")),
+                        BLACKHOLE::consume,
+                        G_PointSizesBenchmark::totalDistance));
+    }
+}
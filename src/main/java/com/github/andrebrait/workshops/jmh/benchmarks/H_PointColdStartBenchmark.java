@@ -0,0 +1,33 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import com.github.andrebrait.workshops.jmh.framework.Blackhole;
+import com.github.andrebrait.workshops.jmh.framework.ForkedRunner;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.benchSingleShot;
+
+/**
+ * "Naive" benchmark measuring the first invocations of each kind of {@link Point} individually, to see how much
+ * they cost before the JIT compiler kicks in, and how many invocations it takes to get there.
+ *
+ * <p>Each benchmark must run in its own JVM, so run this with {@link ForkedRunner}:
+ * {@code ForkedRunner com.github.andrebrait.workshops.jmh.benchmarks.H_PointColdStartBenchmark}.
+ */
+public final class H_PointColdStartBenchmark {
+
+    private static final int INVOCATIONS = 20_000;
+
+    private static final Blackhole BLACKHOLE = new Blackhole();
+
+    private static void bench(String name, Point a, Point b) {
+        benchSingleShot(name, INVOCATIONS, () -> b, BLACKHOLE::consume, a::distance);
+    }
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        bench("point_accurate", new AccuratePoint(0, 0), new AccuratePoint(10, 10));
+        bench("point_fast", new FastPoint(0, 0), new FastPoint(10, 10));
+        bench("point_super_fast", new SuperFastPoint(0, 0), new SuperFastPoint(10, 10));
+        bench("point_fixed", new FixedPoint(0, 0), new FixedPoint(10, 10));
+    }
+}
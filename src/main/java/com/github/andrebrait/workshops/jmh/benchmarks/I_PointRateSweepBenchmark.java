@@ -0,0 +1,61 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import com.github.andrebrait.workshops.jmh.framework.Blackhole;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix.Param;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.*;
+
+/**
+ * "Naive" benchmark which runs the total distance between a number of points at increasing rates, measuring the
+ * latency of each operation from the time it should have started (see
+ * {@link com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework#benchOpenLoop(String, long, long, int, int,
+ * com.github.andrebrait.workshops.jmh.framework.BenchRunnable) benchOpenLoop}).
+ *
+ * <p>While the rate is sustainable, the 99th percentile stays close to the time of a single operation. Past that,
+ * the operations queue up and the latency grows with the duration of the run, no matter how fast each single
+ * operation still is.
+ */
+public final class I_PointRateSweepBenchmark {
+
+    private static final int POINTS = 1000;
+
+    private static final Blackhole BLACKHOLE = new Blackhole();
+
+    private static Point[] points() {
+        Random random = ThreadLocalRandom.current();
+        Point[] points = new Point[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = new FastPoint(random.nextInt(1000), random.nextInt(1000));
+        }
+        return points;
+    }
+
+    private static double totalDistance(Point[] points) {
+        double total = 0.0d;
+        for (int i = 1; i < points.length; i++) {
+            total += points[i - 1].distance(points[i]);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        ParameterMatrix.run(
+                List.of(Param.of("rate", "10000", "100000", "200000", "400000", "800000", "1600000")),
+                params -> benchOpenLoop(
+                        "total_distance",
+                        RUN_MILLIS,
+                        params.getLong("rate"),
+                        WARMUP,
+                        REPEAT,
+                        I_PointRateSweepBenchmark::points,
+                        BLACKHOLE::consume,
+                        I_PointRateSweepBenchmark::totalDistance));
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework;
+import com.github.andrebrait.workshops.jmh.framework.Blackhole;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix.Param;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.*;
+
+/**
+ * "Naive" benchmark which finds the point nearest to a target among the same points stored as an array of
+ * {@link Point} objects and as a {@link PointBatch}.
+ *
+ * <p>With few points, both fit in the caches and the difference is mostly the interface calls (and the square roots,
+ * which the batch doesn't need to compare the distances). With millions of points, the objects are spread over a
+ * much larger part of the heap than the two arrays of the batch, and the time per point of the objects grows a lot
+ * more.
+ */
+public final class J_PointBatchBenchmark {
+
+    private static final Blackhole BLACKHOLE = new Blackhole();
+
+    private record ObjectArgs(Point[] points, Coordinate target) {
+    }
+
+    private record BatchArgs(PointBatch points, Coordinate target) {
+    }
+
+    private static ObjectArgs objects(int size) {
+        Random random = ThreadLocalRandom.current();
+        Point[] points = new Point[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = new AccuratePoint(random.nextInt(1000), random.nextInt(1000));
+        }
+        return new ObjectArgs(points, new RawCoordinate(random.nextInt(1000), random.nextInt(1000)));
+    }
+
+    private static BatchArgs batch(int size) {
+        ObjectArgs objects = objects(size);
+        return new BatchArgs(PointBatch.of(objects.points()), objects.target());
+    }
+
+    private static double nearestObject(ObjectArgs args) {
+        double min = Double.POSITIVE_INFINITY;
+        for (Point point : args.points()) {
+            min = Math.min(min, point.distance(args.target()));
+        }
+        return min;
+    }
+
+    private static double nearestInBatch(BatchArgs args) {
+        return args.points().minDistance(args.target());
+    }
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        ParameterMatrix.run(
+                List.of(Param.of("size", "1000", "100000", "10000000")),
+                params -> {
+                    int size = params.getInt("size");
+                    BenchmarkFramework.benchDouble(
+                            "nearest_objects",
+                            RUN_MILLIS,
+                            1,
+                            WARMUP,
+                            REPEAT,
+                            () -> objects(size),
+                            BLACKHOLE::consume,
+                            J_PointBatchBenchmark::nearestObject);
+                    BenchmarkFramework.benchDouble(
+                            "nearest_batch",
+                            RUN_MILLIS,
+                            1,
+                            WARMUP,
+                            REPEAT,
+                            () -> batch(size),
+                            BLACKHOLE::consume,
+                            J_PointBatchBenchmark::nearestInBatch);
+                });
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.andrebrait.workshops.jmh.benchmarks;
+
+import com.github.andrebrait.workshops.jmh.domain.*;
+import com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework;
+import com.github.andrebrait.workshops.jmh.framework.Blackhole;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix;
+import com.github.andrebrait.workshops.jmh.framework.ParameterMatrix.Param;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.*;
+
+/**
+ * "Naive" benchmark which finds the smallest distance between a point and many coordinates, stored as records on
+ * the heap, in a direct buffer or in a memory-mapped file (see {@link CoordinateStore}).
+ *
+ * <p>The coordinates of each storage are created once and reused by every invocation, with a different point each
+ * time. The records take a few hundred MB of heap, which the GC has to go through on every full collection, while
+ * the other two storages don't use the heap at all. Look at the allocation rate too, as the
+ * {@link CoordinateStore.Cursor} is reused for every coordinate.
+ */
+public final class K_CoordinateStoreBenchmark {
+
+    private static final int SIZE = 10_000_000;
+
+    private static final Blackhole BLACKHOLE = new Blackhole();
+
+    // the coordinates of the storage being benchmarked, as creating them takes much longer than an invocation
+    private static Args data;
+    private static String dataStorage;
+
+    private record Args(Point point, Coordinate[] heap, CoordinateStore store) {
+    }
+
+    private static Args args(String storage) {
+        if (!storage.equals(dataStorage)) {
+            // drop the previous storage first, so only one of them is in memory at a time
+            data = null;
+            dataStorage = null;
+            data = data(storage);
+            dataStorage = storage;
+        }
+        Random random = ThreadLocalRandom.current();
+        return new Args(new AccuratePoint(random.nextInt(1000), random.nextInt(1000)), data.heap(), data.store());
+    }
+
+    private static Args data(String storage) {
+        Random random = ThreadLocalRandom.current();
+        if (storage.equals("heap")) {
+            Coordinate[] coordinates = new Coordinate[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                coordinates[i] = new RawCoordinate(random.nextInt(1000), random.nextInt(1000));
+            }
+            return new Args(null, coordinates, null);
+        }
+        CoordinateStore store = CoordinateStore.allocate(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            store.set(i, random.nextInt(1000), random.nextInt(1000));
+        }
+        return switch (storage) {
+            case "direct" -> new Args(null, null, store);
+            case "mapped" -> new Args(null, null, mapped(store));
+            default -> throw new IllegalArgumentException("Unknown storage: %s".formatted(storage));
+        };
+    }
+
+    private static CoordinateStore mapped(CoordinateStore store) {
+        try {
+            Path file = Files.createTempFile("coordinates", ".bin");
+            file.toFile().deleteOnExit();
+            store.write(file);
+            return CoordinateStore.map(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double minDistance(Args args) {
+        double min = Double.POSITIVE_INFINITY;
+        if (args.heap() != null) {
+            for (Coordinate coordinate : args.heap()) {
+                min = Math.min(min, args.point().distance(coordinate));
+            }
+        } else {
+            CoordinateStore.Cursor cursor = args.store().cursor();
+            for (int i = 0; i < args.store().size(); i++) {
+                min = Math.min(min, args.point().distance(cursor.moveTo(i)));
+            }
+        }
+        return min;
+    }
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        ParameterMatrix.run(
+                List.of(Param.of("storage", "heap", "direct", "mapped")),
+                params -> BenchmarkFramework.benchDouble(
+                        "min_distance",
+                        RUN_MILLIS,
+                        1,
+                        WARMUP,
+                        REPEAT,
+                        () -> args(params.get("storage")),
+                        BLACKHOLE::consume,
+                        K_CoordinateStoreBenchmark::minDistance));
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link SpatialIndex} which compares the target with every coordinate, as a baseline for the real ones.
+ */
+public final class BruteForceIndex implements SpatialIndex {
+
+    private final PointBatch batch;
+
+    /**
+     * Creates an index over the coordinates of a batch, which must not change afterwards.
+     */
+    public BruteForceIndex(PointBatch batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * Creates an index over the given coordinates.
+     */
+    public static BruteForceIndex of(List<? extends Coordinate> coordinates) {
+        return new BruteForceIndex(PointBatch.of(coordinates));
+    }
+
+    @Override
+    public int size() {
+        return batch.size();
+    }
+
+    @Override
+    public int nearest(Coordinate target) {
+        Neighbours neighbours = new Neighbours(Math.min(1, batch.size()));
+        offerAll(target, neighbours);
+        return neighbours.first();
+    }
+
+    @Override
+    public int[] nearest(Coordinate target, int k) {
+        Neighbours neighbours = new Neighbours(Math.min(k, batch.size()));
+        offerAll(target, neighbours);
+        return neighbours.sortedIds();
+    }
+
+    @Override
+    public int[] withinRadius(Coordinate target, double radius) {
+        double squaredRadius = Neighbours.squaredRadius(radius);
+        int[] xs = batch.xs();
+        int[] ys = batch.ys();
+        int tx = target.x();
+        int ty = target.y();
+        IntStream.Builder found = IntStream.builder();
+        for (int i = 0; i < xs.length; i++) {
+            if (Neighbours.squaredDistance(tx, ty, xs[i], ys[i]) <= squaredRadius) {
+                found.add(i);
+            }
+        }
+        return found.build().toArray();
+    }
+
+    private void offerAll(Coordinate target, Neighbours neighbours) {
+        int[] xs = batch.xs();
+        int[] ys = batch.ys();
+        int tx = target.x();
+        int ty = target.y();
+        for (int i = 0; i < xs.length; i++) {
+            neighbours.offer(i, Neighbours.squaredDistance(tx, ty, xs[i], ys[i]));
+        }
+    }
+}
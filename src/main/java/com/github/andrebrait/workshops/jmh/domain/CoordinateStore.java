@@ -0,0 +1,235 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Coordinates stored outside the heap, in a direct {@link ByteBuffer} or in a memory-mapped file, as consecutive
+ * pairs of {@code int}s.
+ *
+ * <p>The GC never has to look at the coordinates, no matter how many there are, and a mapped file is paged in and
+ * out by the OS, so it may even be larger than the heap. The coordinates are read through a {@link Cursor}, a
+ * {@link Coordinate} which can be moved from one index to the next, so any {@link Point} can calculate its distance
+ * to them without creating an object per coordinate.
+ *
+ * <p>The file format is a header with the magic number {@link #MAGIC} and the number of coordinates, followed by
+ * the {@code x} and {@code y} of each coordinate, all as little-endian {@code int}s. {@link #map(Path)} uses the
+ * file as it is, without copying it. A single buffer can't be larger than 2 GiB, so a store holds at most
+ * {@value #MAX_SIZE} coordinates. The mapping is released when the store is garbage collected.
+ */
+public final class CoordinateStore {
+
+    /**
+     * The magic number at the start of a coordinate file ("PTS1" in ASCII, read as a little-endian {@code int}).
+     */
+    public static final int MAGIC = 0x31535450;
+
+    /**
+     * The maximum number of coordinates in a store.
+     */
+    public static final int MAX_SIZE = Integer.MAX_VALUE / (Integer.BYTES * 2);
+
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int COORDINATE_BYTES = Integer.BYTES * 2;
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    private CoordinateStore(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.size = buffer.capacity() / COORDINATE_BYTES;
+    }
+
+    /**
+     * A {@link Coordinate} reading the values at an index of the store, which can be moved to another index.
+     *
+     * <p>Cursors are not thread-safe, but each thread may have its own.
+     */
+    public final class Cursor implements Coordinate {
+
+        private int offset;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves this cursor to the given index.
+         *
+         * @return this cursor
+         */
+        public Cursor moveTo(int index) {
+            offset = checkIndex(index) * COORDINATE_BYTES;
+            return this;
+        }
+
+        @Override
+        public int x() {
+            return buffer.getInt(offset);
+        }
+
+        @Override
+        public int y() {
+            return buffer.getInt(offset + Integer.BYTES);
+        }
+    }
+
+    /**
+     * Creates a store in a direct buffer, with all coordinates at {@code (0, 0)}.
+     *
+     * @param size the number of coordinates
+     */
+    public static CoordinateStore allocate(int size) {
+        return new CoordinateStore(ByteBuffer.allocateDirect(checkSize(size) * COORDINATE_BYTES));
+    }
+
+    /**
+     * Creates a store in a direct buffer with the coordinates of the given batch.
+     */
+    public static CoordinateStore copyOf(PointBatch batch) {
+        CoordinateStore store = allocate(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            store.set(i, batch.xs()[i], batch.ys()[i]);
+        }
+        return store;
+    }
+
+    /**
+     * Maps a coordinate file into memory, read-only.
+     *
+     * @param file the file, as written by {@link #write(Path)}
+     * @return a store reading the coordinates directly from the file
+     */
+    public static CoordinateStore map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalArgumentException("Not a coordinate file: %s".formatted(file));
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0L);
+            int magic = header.getInt(0);
+            int size = header.getInt(Integer.BYTES);
+            if (magic != MAGIC
+                    || size < 0
+                    || size > MAX_SIZE
+                    || channel.size() != HEADER_BYTES + (long) size * COORDINATE_BYTES) {
+                throw new IllegalArgumentException("Not a coordinate file: %s".formatted(file));
+            }
+            // the mapping stays valid after the channel is closed
+            return new CoordinateStore(channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES,
+                    (long) size * COORDINATE_BYTES));
+        }
+    }
+
+    /**
+     * Writes the coordinates of this store to a file, which can be mapped back with {@link #map(Path)}.
+     *
+     * @param file the file, which is replaced if it exists
+     */
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(size).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            ByteBuffer coordinates = buffer.duplicate().clear();
+            while (coordinates.hasRemaining()) {
+                channel.write(coordinates);
+            }
+        }
+    }
+
+    /**
+     * The number of coordinates in this store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The value of the coordinate at the given index in the x-axis.
+     */
+    public int x(int index) {
+        return buffer.getInt(checkIndex(index) * COORDINATE_BYTES);
+    }
+
+    /**
+     * The value of the coordinate at the given index in the y-axis.
+     */
+    public int y(int index) {
+        return buffer.getInt(checkIndex(index) * COORDINATE_BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Changes the coordinate at the given index.
+     *
+     * @throws java.nio.ReadOnlyBufferException if the store was mapped from a file
+     */
+    public void set(int index, int x, int y) {
+        int offset = checkIndex(index) * COORDINATE_BYTES;
+        buffer.putInt(offset, x);
+        buffer.putInt(offset + Integer.BYTES, y);
+    }
+
+    /**
+     * Creates a new cursor, at the first coordinate.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Passes each coordinate to the given action, in order.
+     *
+     * <p>It's always the same {@link Cursor}, moved to the next index each time, so the action must not keep it.
+     */
+    public void forEach(Consumer<? super Coordinate> action) {
+        Cursor cursor = new Cursor();
+        for (int i = 0; i < size; i++) {
+            action.accept(cursor.moveTo(i));
+        }
+    }
+
+    /**
+     * Calculates the distance between a point and each coordinate of this store, with {@link Point#distance}.
+     *
+     * @param point     the point
+     * @param distances where to write the distance to each coordinate, with at least {@link #size()} elements
+     */
+    public void distances(Point point, double[] distances) {
+        if (distances.length < size) {
+            throw new IllegalArgumentException(
+                    "Not enough space for the distances: %d, needs %d".formatted(distances.length, size));
+        }
+        Cursor cursor = new Cursor();
+        for (int i = 0; i < size; i++) {
+            distances[i] = point.distance(cursor.moveTo(i));
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index %d out of bounds for size %d".formatted(index, size));
+        }
+        return index;
+    }
+
+    private static int checkSize(int size) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                    "Invalid size: %d. Must be between 0 and %d".formatted(size, MAX_SIZE));
+        }
+        return size;
+    }
+}
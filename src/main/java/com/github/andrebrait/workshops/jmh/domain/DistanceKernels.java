@@ -0,0 +1,74 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+/**
+ * The distance kernels of {@link VectorDistanceKernels} if the Vector API is available (i.e. the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}), or else those of {@link ScalarDistanceKernels}.
+ *
+ * <p>{@link VectorDistanceKernels} is only loaded if the module is there, so this class works on any JVM.
+ */
+public final class DistanceKernels {
+
+    /**
+     * Whether the kernels are vectorized.
+     */
+    public static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * See {@link ScalarDistanceKernels#accurate(int[], int[], int, int, double[])}.
+     */
+    public static void accurate(int[] xs, int[] ys, int tx, int ty, double[] distances) {
+        if (VECTORIZED) {
+            VectorDistanceKernels.accurate(xs, ys, tx, ty, distances);
+        } else {
+            ScalarDistanceKernels.accurate(xs, ys, tx, ty, distances);
+        }
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#accurate(int[], int[], int, int, int, int, double[])}.
+     */
+    public static void accurate(int[] xs, int[] ys, int offset, int length, int tx, int ty, double[] distances) {
+        if (VECTORIZED) {
+            VectorDistanceKernels.accurate(xs, ys, offset, length, tx, ty, distances);
+        } else {
+            ScalarDistanceKernels.accurate(xs, ys, offset, length, tx, ty, distances);
+        }
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#fast(int[], int[], int, int, double[])}.
+     */
+    public static void fast(int[] xs, int[] ys, int tx, int ty, double[] distances) {
+        if (VECTORIZED) {
+            VectorDistanceKernels.fast(xs, ys, tx, ty, distances);
+        } else {
+            ScalarDistanceKernels.fast(xs, ys, tx, ty, distances);
+        }
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#bob(double[], double[], double[], double[], double[])}.
+     */
+    public static void bob(double[] x1, double[] y1, double[] x2, double[] y2, double[] results) {
+        if (VECTORIZED) {
+            VectorDistanceKernels.bob(x1, y1, x2, y2, results);
+        } else {
+            ScalarDistanceKernels.bob(x1, y1, x2, y2, results);
+        }
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#joe(double[], double[], double[], double[], double[])}.
+     */
+    public static void joe(double[] x1, double[] y1, double[] x2, double[] y2, double[] results) {
+        if (VECTORIZED) {
+            VectorDistanceKernels.joe(x1, y1, x2, y2, results);
+        } else {
+            ScalarDistanceKernels.joe(x1, y1, x2, y2, results);
+        }
+    }
+
+    private DistanceKernels() {
+        // util class
+    }
+}
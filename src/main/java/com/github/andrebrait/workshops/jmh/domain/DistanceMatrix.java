@@ -0,0 +1,207 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates the distance between every pair of points of a batch, in parallel, into a flat row-major matrix: the
+ * distance between the points {@code i} and {@code j} is at {@code i * n + j}.
+ *
+ * <p>A nested loop over the points writes whole rows of the matrix, and reads every point again for each row, which
+ * doesn't fit in the caches for large batches. Here, the matrix is split in tiles of {@value #TILE} x {@value #TILE}
+ * distances, so the points of a tile (and the tile itself) stay in the L1/L2 caches while it's calculated. The
+ * matrix is symmetric, so only the tiles on or above the diagonal are calculated, and each one is also written,
+ * transposed, below the diagonal. Each row of tiles is a task of a {@link ForkJoinPool}, and the rows of the tiles
+ * are calculated with {@link DistanceKernels}.
+ *
+ * <p>The distances are the same as those of {@link AccuratePoint#distance(Coordinate)}. A {@code double[]} can hold
+ * the matrix of up to {@value #MAX_ARRAY_POINTS} points. Larger ones can be written to a memory-mapped file.
+ */
+public final class DistanceMatrix {
+
+    /**
+     * The maximum number of points for a matrix in a {@code double[]}.
+     */
+    public static final int MAX_ARRAY_POINTS = 46_340;
+
+    private static final int TILE = 64;
+    // each mapping of the output file is at most this large
+    private static final long MAX_MAPPING_BYTES = 1L << 30;
+
+    /**
+     * Receives the rows of the tiles.
+     */
+    private interface Sink {
+        void put(int row, int column, double[] values, int offset, int length);
+    }
+
+    /**
+     * Calculates the matrix in the common pool.
+     *
+     * @param points the points
+     * @return the matrix, with {@code n * n} elements
+     */
+    public static double[] compute(PointBatch points) {
+        return compute(points, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Calculates the matrix in the given pool.
+     *
+     * @param points the points
+     * @param pool   the pool to run the tiles in
+     * @return the matrix, with {@code n * n} elements
+     */
+    public static double[] compute(PointBatch points, ForkJoinPool pool) {
+        double[] matrix = new double[checkArraySize(points.size())];
+        compute(points, pool, matrix);
+        return matrix;
+    }
+
+    /**
+     * Calculates the matrix into an existing array, e.g. to reuse it for batches of the same size.
+     *
+     * @param points the points
+     * @param pool   the pool to run the tiles in
+     * @param matrix where to write the matrix, with at least {@code n * n} elements
+     */
+    public static void compute(PointBatch points, ForkJoinPool pool, double[] matrix) {
+        int n = points.size();
+        if (matrix.length < checkArraySize(n)) {
+            throw new IllegalArgumentException(
+                    "Not enough space for the matrix: %d, needs %d".formatted(matrix.length, n * n));
+        }
+        compute(points, pool, (row, column, values, offset, length) ->
+                System.arraycopy(values, offset, matrix, row * n + column, length));
+    }
+
+    /**
+     * Calculates the matrix into a file, as {@code n * n} little-endian {@code double}s, through memory mappings of
+     * the file, so the matrix doesn't have to fit in the heap (or in memory).
+     *
+     * @param points the points
+     * @param pool   the pool to run the tiles in
+     * @param file   the file, which is replaced if it exists
+     */
+    public static void compute(PointBatch points, ForkJoinPool pool, Path file) throws IOException {
+        int n = points.size();
+        long rowBytes = (long) n * Double.BYTES;
+        // whole rows in each mapping, so a row of a tile is never split between two of them
+        int rowsPerMapping = (int) Math.max(1L, MAX_MAPPING_BYTES / Math.max(1L, rowBytes));
+        List<MappedByteBuffer> mappings = new ArrayList<>();
+        List<DoubleBuffer> buffers = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int row = 0; row < n; row += rowsPerMapping) {
+                int rows = Math.min(rowsPerMapping, n - row);
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, row * rowBytes, rows * rowBytes);
+                mappings.add(mapping);
+                buffers.add(mapping.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+            }
+        }
+        // the mappings stay valid after the channel is closed, and the absolute puts don't change their positions,
+        // so the tasks can write to the same buffer at once
+        compute(points, pool, (row, column, values, offset, length) -> buffers.get(row / rowsPerMapping)
+                .put((row % rowsPerMapping) * n + column, values, offset, length));
+        for (MappedByteBuffer mapping : mappings) {
+            mapping.force();
+        }
+    }
+
+    private static void compute(PointBatch points, ForkJoinPool pool, Sink sink) {
+        int tiles = (points.size() + TILE - 1) / TILE;
+        if (tiles > 0) {
+            pool.invoke(new TileRows(points, sink, 0, tiles));
+        }
+    }
+
+    /**
+     * Calculates the tiles of a range of rows of tiles, splitting it until there's a single row.
+     */
+    private static final class TileRows extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final PointBatch points;
+        private final Sink sink;
+        private final int from;
+        private final int to;
+
+        private TileRows(PointBatch points, Sink sink, int from, int to) {
+            this.points = points;
+            this.sink = sink;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileRows(points, sink, from, middle), new TileRows(points, sink, middle, to));
+            } else {
+                computeTileRow(points, sink, from);
+            }
+        }
+    }
+
+    /**
+     * Calculates the tiles of a row of tiles, from the diagonal to the right, and mirrors them below the diagonal.
+     */
+    private static void computeTileRow(PointBatch points, Sink sink, int tileRow) {
+        int n = points.size();
+        int[] xs = points.xs();
+        int[] ys = points.ys();
+        int firstRow = tileRow * TILE;
+        int rows = Math.min(TILE, n - firstRow);
+        double[] distances = new double[TILE];
+        double[] transposed = new double[TILE * TILE];
+        for (int firstColumn = firstRow; firstColumn < n; firstColumn += TILE) {
+            int columns = Math.min(TILE, n - firstColumn);
+            boolean diagonal = firstColumn == firstRow;
+            for (int i = 0; i < rows; i++) {
+                DistanceKernels.accurate(xs, ys, firstColumn, columns, xs[firstRow + i], ys[firstRow + i], distances);
+                sink.put(firstRow + i, firstColumn, distances, 0, columns);
+                if (!diagonal) {
+                    for (int j = 0; j < columns; j++) {
+                        transposed[j * TILE + i] = distances[j];
+                    }
+                }
+            }
+            if (!diagonal) {
+                for (int j = 0; j < columns; j++) {
+                    sink.put(firstColumn + j, firstRow, transposed, j * TILE, rows);
+                }
+            }
+        }
+    }
+
+    private static int checkArraySize(int n) {
+        if (n > MAX_ARRAY_POINTS) {
+            throw new IllegalArgumentException(
+                    "Too many points for an array: %d. Must be at most %d, or use a file".formatted(
+                            n,
+                            MAX_ARRAY_POINTS));
+        }
+        return n * n;
+    }
+
+    private DistanceMatrix() {
+        // util class
+    }
+}
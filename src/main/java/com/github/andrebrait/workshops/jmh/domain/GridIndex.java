@@ -0,0 +1,200 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link SpatialIndex} which buckets the coordinates in a uniform grid of square cells, about
+ * {@value #COORDINATES_PER_CELL} per cell on average, so a query only looks at the cells around the target.
+ *
+ * <p>The coordinates are sorted by cell (with a counting sort) into arrays, and each cell is a range of them, so
+ * there are no bucket objects either. A nearest query looks at the rings of cells around the cell of the target,
+ * one ring at a time, until the next ring can't have anything nearer than what was found.
+ *
+ * <p>Building takes {@code O(n)} time, and queries take constant time on average if the coordinates are spread
+ * evenly. If they are clustered, most cells are empty and a few are crowded, and a {@link KdTree} works better.
+ */
+public final class GridIndex implements SpatialIndex {
+
+    private static final int COORDINATES_PER_CELL = 4;
+
+    private final int[] xs;
+    private final int[] ys;
+    // the index of each coordinate in the original batch
+    private final int[] ids;
+    // the coordinates of cell c are in [cellStarts[c], cellStarts[c + 1])
+    private final int[] cellStarts;
+    private final long minX;
+    private final long minY;
+    private final long cellSize;
+    private final int columns;
+    private final int rows;
+
+    /**
+     * Creates a grid with the coordinates of a batch (which are copied).
+     */
+    public GridIndex(PointBatch batch) {
+        int size = batch.size();
+        int[] batchXs = batch.xs();
+        int[] batchYs = batch.ys();
+        long minX = 0L;
+        long minY = 0L;
+        long maxX = 0L;
+        long maxY = 0L;
+        if (size > 0) {
+            minX = IntStream.of(batchXs).min().getAsInt();
+            minY = IntStream.of(batchYs).min().getAsInt();
+            maxX = IntStream.of(batchXs).max().getAsInt();
+            maxY = IntStream.of(batchYs).max().getAsInt();
+        }
+        long width = maxX - minX + 1L;
+        long height = maxY - minY + 1L;
+        double targetCells = Math.max(1.0d, (double) size / COORDINATES_PER_CELL);
+        long cellSize = Math.max(1L, (long) Math.ceil(Math.sqrt((double) width * height / targetCells)));
+        // if the coordinates are (almost) on a line, the cells can't be square without being way too many
+        while (((width - 1L) / cellSize + 1L) * ((height - 1L) / cellSize + 1L) > 4.0d * targetCells) {
+            cellSize *= 2L;
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = (int) ((width - 1L) / cellSize + 1L);
+        this.rows = (int) ((height - 1L) / cellSize + 1L);
+
+        // counting sort by cell
+        int[] cells = new int[size];
+        this.cellStarts = new int[Math.multiplyExact(columns, rows) + 1];
+        for (int i = 0; i < size; i++) {
+            cells[i] = column(batchXs[i]) + row(batchYs[i]) * columns;
+            cellStarts[cells[i] + 1]++;
+        }
+        for (int c = 0; c < cellStarts.length - 1; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        this.xs = new int[size];
+        this.ys = new int[size];
+        this.ids = new int[size];
+        int[] next = cellStarts.clone();
+        for (int i = 0; i < size; i++) {
+            int position = next[cells[i]]++;
+            xs[position] = batchXs[i];
+            ys[position] = batchYs[i];
+            ids[position] = i;
+        }
+    }
+
+    /**
+     * Creates a grid with the given coordinates.
+     */
+    public static GridIndex of(List<? extends Coordinate> coordinates) {
+        return new GridIndex(PointBatch.of(coordinates));
+    }
+
+    @Override
+    public int size() {
+        return xs.length;
+    }
+
+    @Override
+    public int nearest(Coordinate target) {
+        Neighbours neighbours = new Neighbours(Math.min(1, xs.length));
+        nearest(target.x(), target.y(), neighbours);
+        return neighbours.first();
+    }
+
+    @Override
+    public int[] nearest(Coordinate target, int k) {
+        Neighbours neighbours = new Neighbours(Math.min(k, xs.length));
+        nearest(target.x(), target.y(), neighbours);
+        return neighbours.sortedIds();
+    }
+
+    @Override
+    public int[] withinRadius(Coordinate target, double radius) {
+        double squaredRadius = Neighbours.squaredRadius(radius);
+        int tx = target.x();
+        int ty = target.y();
+        // no coordinate is farther than 2^33 from another, and it keeps the arithmetic below from overflowing
+        long reach = (long) Math.min(Math.ceil(radius), 0x1p33);
+        int firstColumn = clamp(Math.floorDiv(tx - reach - minX, cellSize), columns);
+        int lastColumn = clamp(Math.floorDiv(tx + reach - minX, cellSize), columns);
+        int firstRow = clamp(Math.floorDiv(ty - reach - minY, cellSize), rows);
+        int lastRow = clamp(Math.floorDiv(ty + reach - minY, cellSize), rows);
+        IntStream.Builder found = IntStream.builder();
+        for (int row = firstRow; row <= lastRow; row++) {
+            // the cells of a row are next to each other
+            int from = cellStarts[row * columns + firstColumn];
+            int to = cellStarts[row * columns + lastColumn + 1];
+            for (int i = from; i < to; i++) {
+                if (Neighbours.squaredDistance(tx, ty, xs[i], ys[i]) <= squaredRadius) {
+                    found.add(ids[i]);
+                }
+            }
+        }
+        return found.build().toArray();
+    }
+
+    private void nearest(int tx, int ty, Neighbours neighbours) {
+        // the cell of the target, which may be outside the grid
+        long column = Math.floorDiv(tx - minX, cellSize);
+        long row = Math.floorDiv(ty - minY, cellSize);
+        // the distance (in cells) to the farthest cell of the grid, and to the nearest one
+        long maxRing = Math.max(Math.max(column, columns - 1L - column), Math.max(row, rows - 1L - row));
+        long minRing = Math.max(Math.max(-column, column - (columns - 1L)), Math.max(-row, row - (rows - 1L)));
+        for (long ring = Math.max(0L, minRing); ring <= maxRing; ring++) {
+            visitRing(tx, ty, column, row, ring, neighbours);
+            // the cells of the next rings are at least this far from the target
+            double reach = (double) ring * cellSize;
+            if (neighbours.bound() <= reach * reach) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Offers the coordinates of the cells at the given distance (in cells) from a cell, and inside the grid.
+     */
+    private void visitRing(int tx, int ty, long column, long row, long ring, Neighbours neighbours) {
+        int firstRow = clamp(row - ring, rows);
+        int lastRow = clamp(row + ring, rows);
+        int firstColumn = clamp(column - ring, columns);
+        int lastColumn = clamp(column + ring, columns);
+        for (int r = firstRow; r <= lastRow; r++) {
+            if (r == row - ring || r == row + ring) {
+                // the top and bottom sides of the ring: the whole row
+                visitCells(tx, ty, r * columns + firstColumn, r * columns + lastColumn, neighbours);
+            } else {
+                // the left and right sides: one cell each, if they are inside the grid
+                if (column - ring >= 0L) {
+                    int cell = r * columns + (int) (column - ring);
+                    visitCells(tx, ty, cell, cell, neighbours);
+                }
+                if (column + ring < columns && ring > 0L) {
+                    int cell = r * columns + (int) (column + ring);
+                    visitCells(tx, ty, cell, cell, neighbours);
+                }
+            }
+        }
+    }
+
+    /**
+     * Offers the coordinates of a range of consecutive cells (inclusive).
+     */
+    private void visitCells(int tx, int ty, int firstCell, int lastCell, Neighbours neighbours) {
+        for (int i = cellStarts[firstCell]; i < cellStarts[lastCell + 1]; i++) {
+            neighbours.offer(ids[i], Neighbours.squaredDistance(tx, ty, xs[i], ys[i]));
+        }
+    }
+
+    private int column(int x) {
+        return (int) ((x - minX) / cellSize);
+    }
+
+    private int row(int y) {
+        return (int) ((y - minY) / cellSize);
+    }
+
+    private static int clamp(long cell, int cells) {
+        return (int) Math.max(0L, Math.min(cells - 1L, cell));
+    }
+}
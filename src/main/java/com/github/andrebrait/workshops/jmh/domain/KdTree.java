@@ -0,0 +1,192 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A static, balanced 2-d tree: a {@link SpatialIndex} which splits the coordinates in two halves at the median of
+ * {@code x}, then each half at the median of {@code y}, and so on, so a query can skip every half which is farther
+ * from the target than the nearest coordinates found so far.
+ *
+ * <p>The tree is implicit: the coordinates are reordered in arrays so each node is the median of a range, with its
+ * lower half before it and its upper half after it, and there are no node objects or references to follow. Ranges
+ * of up to {@value #LEAF_SIZE} coordinates are not split any further, as scanning them is faster.
+ *
+ * <p>Building takes {@code O(n log n)} time. A nearest query takes {@code O(log n)} time on average, but it gets
+ * closer to a full scan when the target is far from every coordinate.
+ */
+public final class KdTree implements SpatialIndex {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final int[] xs;
+    private final int[] ys;
+    // the index of each coordinate in the original batch
+    private final int[] ids;
+
+    /**
+     * Creates a tree with the coordinates of a batch (which are copied).
+     */
+    public KdTree(PointBatch batch) {
+        this.xs = batch.xs().clone();
+        this.ys = batch.ys().clone();
+        this.ids = IntStream.range(0, xs.length).toArray();
+        build(0, xs.length, true);
+    }
+
+    /**
+     * Creates a tree with the given coordinates.
+     */
+    public static KdTree of(List<? extends Coordinate> coordinates) {
+        return new KdTree(PointBatch.of(coordinates));
+    }
+
+    @Override
+    public int size() {
+        return xs.length;
+    }
+
+    @Override
+    public int nearest(Coordinate target) {
+        Neighbours neighbours = new Neighbours(Math.min(1, xs.length));
+        nearest(target.x(), target.y(), 0, xs.length, true, neighbours);
+        return neighbours.first();
+    }
+
+    @Override
+    public int[] nearest(Coordinate target, int k) {
+        Neighbours neighbours = new Neighbours(Math.min(k, xs.length));
+        nearest(target.x(), target.y(), 0, xs.length, true, neighbours);
+        return neighbours.sortedIds();
+    }
+
+    @Override
+    public int[] withinRadius(Coordinate target, double radius) {
+        IntStream.Builder found = IntStream.builder();
+        withinRadius(target.x(), target.y(), Neighbours.squaredRadius(radius), 0, xs.length, true, found);
+        return found.build().toArray();
+    }
+
+    private void nearest(int tx, int ty, int from, int to, boolean splitX, Neighbours neighbours) {
+        if (to - from <= LEAF_SIZE) {
+            for (int i = from; i < to; i++) {
+                neighbours.offer(ids[i], Neighbours.squaredDistance(tx, ty, xs[i], ys[i]));
+            }
+            return;
+        }
+        int median = (from + to) >>> 1;
+        neighbours.offer(ids[median], Neighbours.squaredDistance(tx, ty, xs[median], ys[median]));
+        double diff = splitX ? (double) tx - xs[median] : (double) ty - ys[median];
+        // the half with the target first, as it most likely has the nearest coordinates
+        if (diff < 0.0d) {
+            nearest(tx, ty, from, median, !splitX, neighbours);
+            if (diff * diff < neighbours.bound()) {
+                nearest(tx, ty, median + 1, to, !splitX, neighbours);
+            }
+        } else {
+            nearest(tx, ty, median + 1, to, !splitX, neighbours);
+            if (diff * diff < neighbours.bound()) {
+                nearest(tx, ty, from, median, !splitX, neighbours);
+            }
+        }
+    }
+
+    private void withinRadius(
+            int tx,
+            int ty,
+            double squaredRadius,
+            int from,
+            int to,
+            boolean splitX,
+            IntStream.Builder found) {
+        if (to - from <= LEAF_SIZE) {
+            for (int i = from; i < to; i++) {
+                if (Neighbours.squaredDistance(tx, ty, xs[i], ys[i]) <= squaredRadius) {
+                    found.add(ids[i]);
+                }
+            }
+            return;
+        }
+        int median = (from + to) >>> 1;
+        if (Neighbours.squaredDistance(tx, ty, xs[median], ys[median]) <= squaredRadius) {
+            found.add(ids[median]);
+        }
+        double diff = splitX ? (double) tx - xs[median] : (double) ty - ys[median];
+        if (diff <= 0.0d || diff * diff <= squaredRadius) {
+            withinRadius(tx, ty, squaredRadius, from, median, !splitX, found);
+        }
+        if (diff >= 0.0d || diff * diff <= squaredRadius) {
+            withinRadius(tx, ty, squaredRadius, median + 1, to, !splitX, found);
+        }
+    }
+
+    /**
+     * Reorders a range so its median (by {@code x} or {@code y}) is in the middle, with nothing greater before it
+     * and nothing smaller after it, then does the same for each half with the other axis.
+     */
+    private void build(int from, int to, boolean splitX) {
+        while (to - from > LEAF_SIZE) {
+            int median = (from + to) >>> 1;
+            select(from, to, median, splitX ? xs : ys);
+            build(from, median, !splitX);
+            // the upper half in the loop, so the recursion only goes as deep as the tree
+            from = median + 1;
+            splitX = !splitX;
+        }
+    }
+
+    /**
+     * Quickselect: moves the k-th smallest key of a range to position {@code k}, the smaller ones before it and the
+     * greater ones after it.
+     */
+    private void select(int from, int to, int k, int[] keys) {
+        int lo = from;
+        int hi = to - 1;
+        while (lo < hi) {
+            // median of three, so sorted or reversed input doesn't take quadratic time
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < keys[lo]) {
+                swap(lo, mid);
+            }
+            if (keys[hi] < keys[lo]) {
+                swap(lo, hi);
+            }
+            if (keys[hi] < keys[mid]) {
+                swap(mid, hi);
+            }
+            int pivot = keys[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        int y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+}
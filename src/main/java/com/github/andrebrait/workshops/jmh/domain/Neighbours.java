@@ -0,0 +1,124 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+/**
+ * The nearest coordinates found so far by a k-nearest query, in a max-heap by distance, so the farthest one can be
+ * replaced as soon as a nearer one is found.
+ */
+final class Neighbours {
+
+    private final int[] ids;
+    private final double[] squaredDistances;
+    private int size;
+
+    Neighbours(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Invalid k: %d. Must be at least 0".formatted(k));
+        }
+        this.ids = new int[k];
+        this.squaredDistances = new double[k];
+    }
+
+    /**
+     * The squared Euclidean distance between two coordinates.
+     */
+    static double squaredDistance(int x1, int y1, int x2, int y2) {
+        double dx = x2 - (double) x1;
+        double dy = y2 - (double) y1;
+        return (dx * dx) + (dy * dy);
+    }
+
+    /**
+     * Checks a radius, returning its square.
+     */
+    static double squaredRadius(double radius) {
+        if (!(radius >= 0.0d)) {
+            throw new IllegalArgumentException("Invalid radius: %s. Must be at least 0".formatted(radius));
+        }
+        return radius * radius;
+    }
+
+    /**
+     * Whether the heap already has {@code k} coordinates.
+     */
+    boolean isFull() {
+        return size == ids.length;
+    }
+
+    /**
+     * The squared distance a coordinate must be below to be one of the nearest: that of the farthest one so far if
+     * the heap is full, or else infinity.
+     */
+    double bound() {
+        return isFull() ? (size == 0 ? -1.0d : squaredDistances[0]) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Adds a coordinate, if it's nearer than the farthest one so far or the heap is not full yet.
+     */
+    void offer(int id, double squaredDistance) {
+        if (!isFull()) {
+            // sift up
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (squaredDistances[parent] >= squaredDistance) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                squaredDistances[i] = squaredDistances[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            squaredDistances[i] = squaredDistance;
+        } else if (size > 0 && squaredDistance < squaredDistances[0]) {
+            // replace the farthest
+            siftDown(id, squaredDistance);
+        }
+    }
+
+    /**
+     * Puts a coordinate at the top of the heap, in place of the farthest one, and moves it down to its place.
+     */
+    private void siftDown(int id, double squaredDistance) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && squaredDistances[child + 1] > squaredDistances[child]) {
+                child++;
+            }
+            if (squaredDistances[child] <= squaredDistance) {
+                break;
+            }
+            ids[i] = ids[child];
+            squaredDistances[i] = squaredDistances[child];
+            i = child;
+        }
+        ids[i] = id;
+        squaredDistances[i] = squaredDistance;
+    }
+
+    /**
+     * The nearest coordinate, or {@code -1} if none were added (only meant for {@code k == 1}).
+     */
+    int first() {
+        return size == 0 ? -1 : ids[0];
+    }
+
+    /**
+     * Removes all the coordinates, returning them the nearest first.
+     */
+    int[] sortedIds() {
+        int[] sorted = new int[size];
+        // the farthest one is always at the top, so the array is filled from the back
+        while (size > 0) {
+            sorted[--size] = ids[0];
+            if (size > 0) {
+                siftDown(ids[size], squaredDistances[size]);
+            }
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+import java.util.List;
+
+/**
+ * A batch of points stored column by column, in two arrays of primitives, instead of one object per point.
+ *
+ * <p>An array of {@link Point} holds a reference per point, each to an object with its own header, possibly far from
+ * the previous one in memory, and its coordinates are read through interface calls. Here, the coordinates of
+ * consecutive points are next to each other, so the bulk operations below read memory sequentially, use 8 bytes
+ * per point and leave the JIT compiler with simple counted loops over arrays, which it can unroll and vectorize.
+ *
+ * <p>The distances are Euclidean, like those of {@link AccuratePoint}. The arrays are not copied, so changing them
+ * changes the batch.
+ */
+public final class PointBatch {
+
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * Creates a batch with the given coordinates.
+     *
+     * @param xs the values of the coordinates in the x-axis
+     * @param ys the values of the coordinates in the y-axis, as many as {@code xs}
+     */
+    public PointBatch(int[] xs, int[] ys) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException(
+                    "Different numbers of coordinates: %d in x, %d in y".formatted(xs.length, ys.length));
+        }
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * Creates a batch with the coordinates of the given points.
+     */
+    public static PointBatch of(List<? extends Coordinate> coordinates) {
+        int[] xs = new int[coordinates.size()];
+        int[] ys = new int[coordinates.size()];
+        for (int i = 0; i < xs.length; i++) {
+            Coordinate coordinate = coordinates.get(i);
+            xs[i] = coordinate.x();
+            ys[i] = coordinate.y();
+        }
+        return new PointBatch(xs, ys);
+    }
+
+    /**
+     * Creates a batch with the coordinates of the given points.
+     */
+    public static PointBatch of(Coordinate... coordinates) {
+        return of(List.of(coordinates));
+    }
+
+    /**
+     * The number of points in this batch.
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * The values of the coordinates in the x-axis.
+     */
+    public int[] xs() {
+        return xs;
+    }
+
+    /**
+     * The values of the coordinates in the y-axis.
+     */
+    public int[] ys() {
+        return ys;
+    }
+
+    /**
+     * The point at the given index, as an object.
+     */
+    public AccuratePoint get(int index) {
+        return new AccuratePoint(xs[index], ys[index]);
+    }
+
+    /**
+     * Calculates the distance between each point of this batch and a target, with the Vector API if available
+     * (see {@link DistanceKernels}).
+     *
+     * @param target    the target coordinate
+     * @param distances where to write the distance of each point, with at least {@link #size()} elements
+     */
+    public void distances(Coordinate target, double[] distances) {
+        checkCapacity(distances, xs.length);
+        DistanceKernels.accurate(xs, ys, target.x(), target.y(), distances);
+    }
+
+    /**
+     * Calculates the distance between each point of this batch and each point of another batch.
+     *
+     * @param other     the other batch
+     * @param distances where to write the distances, row by row: the distance between the point {@code i} of this
+     *                  batch and the point {@code j} of the other one is at {@code i * other.size() + j}
+     */
+    public void pairwiseDistances(PointBatch other, double[] distances) {
+        int columns = other.xs.length;
+        checkCapacity(distances, Math.multiplyExact(xs.length, columns));
+        for (int i = 0; i < xs.length; i++) {
+            // subtracted as ints, like AccuratePoint and the other operations of this batch
+            int x = xs[i];
+            int y = ys[i];
+            int row = i * columns;
+            for (int j = 0; j < columns; j++) {
+                double dx = other.xs[j] - x;
+                double dy = other.ys[j] - y;
+                distances[row + j] = Math.sqrt((dx * dx) + (dy * dy));
+            }
+        }
+    }
+
+    /**
+     * Finds the point of this batch nearest to a target.
+     *
+     * @param target the target coordinate
+     * @return the index of the nearest point (the first one, in case of a tie), or {@code -1} if the batch is empty
+     */
+    public int nearest(Coordinate target) {
+        int tx = target.x();
+        int ty = target.y();
+        int nearest = -1;
+        // comparing the squared distances gives the same order, without the square roots
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < xs.length; i++) {
+            double dx = tx - xs[i];
+            double dy = ty - ys[i];
+            double squared = (dx * dx) + (dy * dy);
+            if (squared < min) {
+                min = squared;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Calculates the distance between a target and the point of this batch nearest to it.
+     *
+     * @param target the target coordinate
+     * @return the distance, or {@link Double#POSITIVE_INFINITY} if the batch is empty
+     */
+    public double minDistance(Coordinate target) {
+        int nearest = nearest(target);
+        return nearest < 0 ? Double.POSITIVE_INFINITY : get(nearest).distance(target);
+    }
+
+    private static void checkCapacity(double[] distances, int required) {
+        if (distances.length < required) {
+            throw new IllegalArgumentException(
+                    "Not enough space for the distances: %d, needs %d".formatted(distances.length, required));
+        }
+    }
+}
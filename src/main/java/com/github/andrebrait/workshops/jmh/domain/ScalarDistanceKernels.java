@@ -0,0 +1,124 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+/**
+ * The distance formulas of the points, and of {@code Solutions.bob} and {@code Solutions.joe}, as plain loops over
+ * arrays of primitives.
+ *
+ * <p>The JIT compiler may vectorize some of these loops by itself (superword), but it gives up on many of them. See
+ * {@link VectorDistanceKernels} for the explicitly vectorized versions, and {@link DistanceKernels} to pick the best
+ * one available.
+ */
+public final class ScalarDistanceKernels {
+
+    /**
+     * Calculates the distances between many points and a target like {@link AccuratePoint#distance(Coordinate)}.
+     *
+     * @param xs        the values of the points in the x-axis
+     * @param ys        the values of the points in the y-axis, at least as many as {@code xs}
+     * @param tx        the value of the target in the x-axis
+     * @param ty        the value of the target in the y-axis
+     * @param distances where to write the distances, at least as many as {@code xs}
+     */
+    public static void accurate(int[] xs, int[] ys, int tx, int ty, double[] distances) {
+        accurate(xs, ys, 0, xs.length, tx, ty, distances, 0);
+    }
+
+    /**
+     * Calculates the distances between a range of points and a target like {@link AccuratePoint#distance(Coordinate)},
+     * e.g. for a block of a larger batch, without copying it.
+     *
+     * @param xs        the values of the points in the x-axis
+     * @param ys        the values of the points in the y-axis
+     * @param offset    the index of the first point of the range
+     * @param length    the number of points in the range
+     * @param tx        the value of the target in the x-axis
+     * @param ty        the value of the target in the y-axis
+     * @param distances where to write the distances, from index {@code 0}, at least {@code length} of them
+     */
+    public static void accurate(int[] xs, int[] ys, int offset, int length, int tx, int ty, double[] distances) {
+        accurate(xs, ys, offset, length, tx, ty, distances, 0);
+    }
+
+    /**
+     * Calculates the distances between many points and a target like {@link FastPoint#distance(Coordinate)}.
+     *
+     * @param xs        the values of the points in the x-axis
+     * @param ys        the values of the points in the y-axis, at least as many as {@code xs}
+     * @param tx        the value of the target in the x-axis
+     * @param ty        the value of the target in the y-axis
+     * @param distances where to write the distances, at least as many as {@code xs}
+     */
+    public static void fast(int[] xs, int[] ys, int tx, int ty, double[] distances) {
+        fast(xs, ys, tx, ty, distances, 0);
+    }
+
+    /**
+     * Calculates {@code Solutions.bob} for many pairs of points.
+     *
+     * @param x1      the values of the first points in the x-axis
+     * @param y1      the values of the first points in the y-axis, at least as many as {@code x1}
+     * @param x2      the values of the second points in the x-axis, at least as many as {@code x1}
+     * @param y2      the values of the second points in the y-axis, at least as many as {@code x1}
+     * @param results where to write the results, at least as many as {@code x1}
+     */
+    public static void bob(double[] x1, double[] y1, double[] x2, double[] y2, double[] results) {
+        bob(x1, y1, x2, y2, results, 0);
+    }
+
+    /**
+     * Calculates {@code Solutions.joe} for many pairs of points.
+     *
+     * @param x1      the values of the first points in the x-axis
+     * @param y1      the values of the first points in the y-axis, at least as many as {@code x1}
+     * @param x2      the values of the second points in the x-axis, at least as many as {@code x1}
+     * @param y2      the values of the second points in the y-axis, at least as many as {@code x1}
+     * @param results where to write the results, at least as many as {@code x1}
+     */
+    public static void joe(double[] x1, double[] y1, double[] x2, double[] y2, double[] results) {
+        joe(x1, y1, x2, y2, results, 0);
+    }
+
+    // the versions below start at a given index, so they can also finish what the vectorized loops leave behind
+
+    static void accurate(
+            int[] xs,
+            int[] ys,
+            int offset,
+            int length,
+            int tx,
+            int ty,
+            double[] distances,
+            int from) {
+        for (int i = from; i < length; i++) {
+            double dx = tx - xs[offset + i];
+            double dy = ty - ys[offset + i];
+            distances[i] = Math.sqrt((dx * dx) + (dy * dy));
+        }
+    }
+
+    static void fast(int[] xs, int[] ys, int tx, int ty, double[] distances, int from) {
+        for (int i = from; i < xs.length; i++) {
+            double dx = tx - xs[i];
+            double dy = ty - ys[i];
+            distances[i] = (dx * dx) + (dy * dy);
+        }
+    }
+
+    static void bob(double[] x1, double[] y1, double[] x2, double[] y2, double[] results, int from) {
+        for (int i = from; i < x1.length; i++) {
+            double dx = x2[i] - x1[i];
+            double dy = y2[i] - y1[i];
+            results[i] = Math.sqrt((dx * dx) + (dy * dy));
+        }
+    }
+
+    static void joe(double[] x1, double[] y1, double[] x2, double[] y2, double[] results, int from) {
+        for (int i = from; i < x1.length; i++) {
+            results[i] = (x2[i] - x1[i]) + (y2[i] - y1[i]);
+        }
+    }
+
+    private ScalarDistanceKernels() {
+        // util class
+    }
+}
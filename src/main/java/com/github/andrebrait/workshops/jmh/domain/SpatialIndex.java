@@ -0,0 +1,50 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+/**
+ * An index of coordinates which answers nearest-neighbour queries without comparing the target with every one of
+ * them, unlike a scan of an array of {@link Point}s.
+ *
+ * <p>The coordinates are identified by their index in the batch (or list) the index was built from, and the
+ * distances are Euclidean. They're calculated in {@code double} from the start, so unlike those of
+ * {@link AccuratePoint}, which subtracts the {@code int}s first, they don't overflow for coordinates far apart.
+ * Indexes are immutable, so they can be queried by many threads at once. In case of a tie, any of the nearest
+ * coordinates may be returned.
+ *
+ * @see KdTree
+ * @see GridIndex
+ * @see BruteForceIndex
+ */
+public interface SpatialIndex {
+
+    /**
+     * The number of coordinates in this index.
+     */
+    int size();
+
+    /**
+     * Finds the coordinate nearest to a target.
+     *
+     * @param target the target coordinate
+     * @return the index of the nearest coordinate, or {@code -1} if this index is empty
+     */
+    int nearest(Coordinate target);
+
+    /**
+     * Finds the {@code k} coordinates nearest to a target.
+     *
+     * @param target the target coordinate
+     * @param k      the number of coordinates to find
+     * @return the indexes of the nearest coordinates, the nearest first (fewer than {@code k} if this index has
+     * fewer coordinates)
+     */
+    int[] nearest(Coordinate target, int k);
+
+    /**
+     * Finds the coordinates within a distance of a target.
+     *
+     * @param target the target coordinate
+     * @param radius the maximum distance (inclusive)
+     * @return the indexes of the coordinates, in no particular order
+     */
+    int[] withinRadius(Coordinate target, double radius);
+}
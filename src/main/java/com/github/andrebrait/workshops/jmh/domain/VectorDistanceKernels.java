@@ -0,0 +1,100 @@
+package com.github.andrebrait.workshops.jmh.domain;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The same kernels as {@link ScalarDistanceKernels}, explicitly vectorized with the Vector API: each iteration
+ * calculates as many distances as there are {@code double} lanes in the widest vectors of the CPU (e.g. 4 with AVX2,
+ * 8 with AVX-512, 2 with NEON), and the elements left over are calculated by the scalar loops.
+ *
+ * <p>The Vector API is still incubating in Java 17, so this class can only be loaded if the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}. Use {@link DistanceKernels} unless the module is known to be there.
+ * Without C2 (e.g. in the interpreter or with {@code -XX:TieredStopAtLevel=1}), the vectors are real objects and
+ * this is much slower than the scalar loops.
+ *
+ * <p>The coordinates of the points are subtracted as {@code int}s before being converted to {@code double}s, like
+ * the scalar versions do, so both give exactly the same results.
+ */
+public final class VectorDistanceKernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // as many int lanes as double lanes, in half the bits
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(
+            int.class,
+            VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    /**
+     * See {@link ScalarDistanceKernels#accurate(int[], int[], int, int, double[])}.
+     */
+    public static void accurate(int[] xs, int[] ys, int tx, int ty, double[] distances) {
+        accurate(xs, ys, 0, xs.length, tx, ty, distances);
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#accurate(int[], int[], int, int, int, int, double[])}.
+     */
+    public static void accurate(int[] xs, int[] ys, int offset, int length, int tx, int ty, double[] distances) {
+        IntVector vtx = IntVector.broadcast(INTS, tx);
+        IntVector vty = IntVector.broadcast(INTS, ty);
+        int i = 0;
+        for (int upper = DOUBLES.loopBound(length); i < upper; i += DOUBLES.length()) {
+            DoubleVector dx = toDoubles(vtx.sub(IntVector.fromArray(INTS, xs, offset + i)));
+            DoubleVector dy = toDoubles(vty.sub(IntVector.fromArray(INTS, ys, offset + i)));
+            dx.mul(dx).add(dy.mul(dy)).sqrt().intoArray(distances, i);
+        }
+        ScalarDistanceKernels.accurate(xs, ys, offset, length, tx, ty, distances, i);
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#fast(int[], int[], int, int, double[])}.
+     */
+    public static void fast(int[] xs, int[] ys, int tx, int ty, double[] distances) {
+        IntVector vtx = IntVector.broadcast(INTS, tx);
+        IntVector vty = IntVector.broadcast(INTS, ty);
+        int i = 0;
+        for (int upper = DOUBLES.loopBound(xs.length); i < upper; i += DOUBLES.length()) {
+            DoubleVector dx = toDoubles(vtx.sub(IntVector.fromArray(INTS, xs, i)));
+            DoubleVector dy = toDoubles(vty.sub(IntVector.fromArray(INTS, ys, i)));
+            dx.mul(dx).add(dy.mul(dy)).intoArray(distances, i);
+        }
+        ScalarDistanceKernels.fast(xs, ys, tx, ty, distances, i);
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#bob(double[], double[], double[], double[], double[])}.
+     */
+    public static void bob(double[] x1, double[] y1, double[] x2, double[] y2, double[] results) {
+        int i = 0;
+        for (int upper = DOUBLES.loopBound(x1.length); i < upper; i += DOUBLES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(DOUBLES, x2, i).sub(DoubleVector.fromArray(DOUBLES, x1, i));
+            DoubleVector dy = DoubleVector.fromArray(DOUBLES, y2, i).sub(DoubleVector.fromArray(DOUBLES, y1, i));
+            dx.mul(dx).add(dy.mul(dy)).sqrt().intoArray(results, i);
+        }
+        ScalarDistanceKernels.bob(x1, y1, x2, y2, results, i);
+    }
+
+    /**
+     * See {@link ScalarDistanceKernels#joe(double[], double[], double[], double[], double[])}.
+     */
+    public static void joe(double[] x1, double[] y1, double[] x2, double[] y2, double[] results) {
+        int i = 0;
+        for (int upper = DOUBLES.loopBound(x1.length); i < upper; i += DOUBLES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(DOUBLES, x2, i).sub(DoubleVector.fromArray(DOUBLES, x1, i));
+            DoubleVector dy = DoubleVector.fromArray(DOUBLES, y2, i).sub(DoubleVector.fromArray(DOUBLES, y1, i));
+            dx.add(dy).intoArray(results, i);
+        }
+        ScalarDistanceKernels.joe(x1, y1, x2, y2, results, i);
+    }
+
+    private static DoubleVector toDoubles(IntVector ints) {
+        return (DoubleVector) ints.convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+
+    private VectorDistanceKernels() {
+        // util class
+    }
+}
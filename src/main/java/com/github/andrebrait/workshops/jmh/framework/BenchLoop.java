@@ -0,0 +1,24 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+/**
+ * A complete measurement loop for a single benchmark, usually generated for a method annotated with
+ * {@link NaiveBenchmark}.
+ *
+ * <p>Since each benchmark gets its own loop, the call to the benchmarked code is only ever made to a single method
+ * and the JIT compiler can inline it, no matter how many benchmarks ran before in the same JVM.
+ */
+@FunctionalInterface
+public interface BenchLoop {
+
+    /**
+     * Runs the benchmarked code until {@code runMillis} milliseconds have passed, checking the time every
+     * {@code loop} executions. The first {@code loop} executions always run, so a run of {@code 0} milliseconds
+     * executes the benchmarked code exactly {@code loop} times.
+     *
+     * @param runMillis the duration of the run (in milliseconds)
+     * @param loop      the number of times to execute the benchmarked code per time measurement
+     * @param blackhole where to put the values returned by the benchmarked code
+     * @return the number of times the benchmarked code was executed
+     */
+    long run(long runMillis, int loop, Blackhole blackhole);
+}
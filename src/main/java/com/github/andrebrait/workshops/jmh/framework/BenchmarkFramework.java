@@ -1,5 +1,7 @@
 package com.github.andrebrait.workshops.jmh.framework;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
@@ -8,7 +10,7 @@ import java.util.function.Consumer;
  * <p>This just runs a provided {@link Runnable} and prints out the number of executions per millisecond.
  * The number of executions (loops) per time measurement can be tuned to emphasize certain aspects of the
  * benchmark, as the time measurement can be expensive compared to the benchmarked code and thus could mask
- * its performance characteristics.
+ * its performance characteristics. With {@link #AUTO_LOOP}, it's picked for each benchmark by {@link Calibration}.
  *
  * <p>Reference: <a href="https://www.oracle.com/technical-resources/articles/java/architect-benchmarking.html">Avoiding Benchmarking Pitfalls on the JVM</a>.
  */
@@ -19,12 +21,78 @@ public final class BenchmarkFramework {
     public static final int WARMUP = 2;
     public static final int LOOP = 10_000;
 
+    /**
+     * Passed instead of a fixed number of loops (or batch size) to pick one for each benchmark with {@link Calibration}.
+     */
+    public static final int AUTO_LOOP = 0;
+
+    /**
+     * If set, the warmup is extended until this many consecutive warmup iterations ran without any JIT compilation
+     * or garbage collection.
+     */
+    public static final String CLEAN_WARMUP_PROPERTY = "bench.cleanWarmup";
+
+    /**
+     * The maximum number of warmup iterations when the warmup is extended
+     * (default: {@value #DEFAULT_MAX_WARMUP}).
+     */
+    public static final String MAX_WARMUP_PROPERTY = "bench.maxWarmup";
+    public static final int DEFAULT_MAX_WARMUP = 20;
+
+    /**
+     * If {@code true}, the warmup ends as soon as the scores of the last few iterations are stable and the measurement
+     * ends as soon as the confidence interval of the score is narrow enough, instead of using fixed numbers of
+     * iterations. See {@link Iterations}.
+     */
+    public static final String STEADY_STATE_PROPERTY = "bench.steadyState";
+
+    /**
+     * The maximum coefficient of variation of the last warmup iterations for the benchmark to be considered
+     * stable (default: {@value #DEFAULT_STEADY_STATE_CV}).
+     */
+    public static final String STEADY_STATE_CV_PROPERTY = "bench.steadyStateCv";
+    public static final double DEFAULT_STEADY_STATE_CV = 0.02d;
+
+    /**
+     * The maximum half-width of the 95% confidence interval of the score, relative to the score, for the measurement
+     * to end (default: {@value #DEFAULT_TARGET_ERROR}).
+     */
+    public static final String TARGET_ERROR_PROPERTY = "bench.targetError";
+    public static final double DEFAULT_TARGET_ERROR = 0.01d;
+
+    /**
+     * The maximum number of measured iterations when looking for a steady state
+     * (default: {@value #DEFAULT_MAX_REPEAT}).
+     */
+    public static final String MAX_REPEAT_PROPERTY = "bench.maxRepeat";
+    public static final int DEFAULT_MAX_REPEAT = 20;
+
+    /**
+     * If {@code true}, the frequency and load of the CPUs and the context switches are sampled in the background
+     * and reported for each iteration, with a warning for the measured iterations which ran at a different frequency
+     * or with more context switches than the others. See {@link HardwareSampler}.
+     */
+    public static final String HARDWARE_SAMPLER_PROPERTY = "bench.hwSampler";
+
+    /**
+     * The interval between samples of the hardware sampler, in milliseconds
+     * (default: {@value #DEFAULT_HARDWARE_SAMPLE_MILLIS}).
+     */
+    public static final String HARDWARE_SAMPLE_MILLIS_PROPERTY = "bench.hwSampleMillis";
+    public static final long DEFAULT_HARDWARE_SAMPLE_MILLIS = 100L;
+
+    /**
+     * If {@code true}, the measured iterations of each benchmark are recorded with JDK Flight Recorder, and the hot
+     * methods, allocation sites and deoptimizations are printed after them. See {@link JfrProfile}.
+     */
+    public static final String JFR_PROPERTY = "bench.jfr";
+
     /**
      * Runs a given benchmark and print the statistics.
      *
      * @param name      the name of the benchmark (for display purposes)
      * @param runMillis the duration of the benchmark (in milliseconds)
-     * @param loop      the number of times to execute the benchmarked code per time measurement
+     * @param loop      the number of times to execute the benchmarked code per time measurement, or {@link #AUTO_LOOP}
      * @param warmup    how many runs to execute before taking measurements
      * @param repeat    how many times to repeat the benchmark in total (after the warmup)
      * @param benchmark a {@link Runnable} which will contain the benchmarked code
@@ -36,13 +104,22 @@ public final class BenchmarkFramework {
             int warmup,
             int repeat,
             BenchRunnable benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
         System.out.printf("Running: %s%n", name);
-        int max = repeat + warmup;
+        if (loop == AUTO_LOOP) {
+            loop = Calibration.loop(benchmark);
+        }
         long averageThroughput = 0L;
         double averageTimePerOp = 0.0d;
-        for (int i = 0; i < max; i++) {
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
             long numOperations = 0L;
             long duration = 0L;
+            probe.start();
             long start = System.currentTimeMillis();
             while (duration < runMillis) {
                 for (int j = 0; j < loop; j++) {
@@ -51,22 +128,33 @@ public final class BenchmarkFramework {
                 }
                 duration = System.currentTimeMillis() - start;
             }
+            probe.stop(numOperations);
             long throughput = numOperations / duration;
             double timePerOp = (duration * 1E6) / numOperations;
-            boolean benchRun = i >= warmup;
+            boolean benchRun = !iterations.isWarmup();
             if (benchRun) {
                 averageThroughput += throughput;
                 averageTimePerOp += timePerOp;
+                averageBytesPerOp += probe.bytesPerOp();
             }
             System.out.printf(
-                    "%d ops/ms (%.2f ns/op)%s%n",
+                    "%d ops/ms (%.2f ns/op%s)%s%n",
                     throughput,
                     timePerOp,
+                    probe.summary(),
                     (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed((double) numOperations / duration, probe);
         }
-        averageThroughput /= repeat;
-        averageTimePerOp /= repeat;
-        System.out.printf("[ ~%d ops/ms (%.2f ns/op)]%n%n", averageThroughput, averageTimePerOp);
+        averageThroughput /= iterations.measured();
+        averageTimePerOp /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf(
+                "[ ~%d ops/ms (%.2f ns/op%s)]%n%n",
+                averageThroughput,
+                averageTimePerOp,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportThroughput(name, iterations.samples(), averageTimePerOp, averageBytesPerOp);
     }
 
     /**
@@ -74,7 +162,8 @@ public final class BenchmarkFramework {
      *
      * @param name         the name of the benchmark (for display purposes)
      * @param runMillis    the duration of the benchmark (in milliseconds)
-     * @param loop         the number of times to execute the benchmarked code per time measurement
+     * @param loop         the number of times to execute the benchmarked code per time measurement, or
+     *                     {@link #AUTO_LOOP}
      * @param warmup       how many runs to execute before taking measurements
      * @param repeat       how many times to repeat the benchmark in total (after the warmup)
      * @param argsSupplier supplier of arguments used for the benchmark, called once per trial
@@ -89,14 +178,24 @@ public final class BenchmarkFramework {
             int repeat,
             BenchSupplier<A> argsSupplier,
             BenchConsumer<A> benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
         System.out.printf("Running: %s%n", name);
-        int max = repeat + warmup;
+        if (loop == AUTO_LOOP) {
+            A calibrationArgs = argsSupplier.get();
+            loop = Calibration.loop(() -> benchmark.accept(calibrationArgs));
+        }
         long averageThroughput = 0L;
         double averageTimePerOp = 0.0d;
-        for (int i = 0; i < max; i++) {
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
             A args = argsSupplier.get();
             long numOperations = 0L;
             long duration = 0L;
+            probe.start();
             long start = System.currentTimeMillis();
             while (duration < runMillis) {
                 for (int j = 0; j < loop; j++) {
@@ -105,22 +204,33 @@ public final class BenchmarkFramework {
                 }
                 duration = System.currentTimeMillis() - start;
             }
+            probe.stop(numOperations);
             long throughput = numOperations / duration;
             double timePerOp = (duration * 1E6) / numOperations;
-            boolean benchRun = i >= warmup;
+            boolean benchRun = !iterations.isWarmup();
             if (benchRun) {
                 averageThroughput += throughput;
                 averageTimePerOp += timePerOp;
+                averageBytesPerOp += probe.bytesPerOp();
             }
             System.out.printf(
-                    "%d ops/ms (%.2f ns/op)%s%n",
+                    "%d ops/ms (%.2f ns/op%s)%s%n",
                     throughput,
                     timePerOp,
+                    probe.summary(),
                     (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed((double) numOperations / duration, probe);
         }
-        averageThroughput /= repeat;
-        averageTimePerOp /= repeat;
-        System.out.printf("[ ~%d ops/ms (%.2f ns/op)]%n%n", averageThroughput, averageTimePerOp);
+        averageThroughput /= iterations.measured();
+        averageTimePerOp /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf(
+                "[ ~%d ops/ms (%.2f ns/op%s)]%n%n",
+                averageThroughput,
+                averageTimePerOp,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportThroughput(name, iterations.samples(), averageTimePerOp, averageBytesPerOp);
     }
 
     /**
@@ -128,11 +238,13 @@ public final class BenchmarkFramework {
      *
      * @param name           the name of the benchmark (for display purposes)
      * @param runMillis      the duration of the benchmark (in milliseconds)
-     * @param loop           the number of times to execute the benchmarked code per time measurement
+     * @param loop           the number of times to execute the benchmarked code per time measurement, or
+     *                       {@link #AUTO_LOOP}
      * @param warmup         how many runs to execute before taking measurements
      * @param repeat         how many times to repeat the benchmark in total (after the warmup)
      * @param argsSupplier   supplier of arguments used for the benchmark, called once per trial
      * @param resultConsumer a consumer that will consume the values returned by the benchmark
+     *                       (e.g. a {@link Blackhole})
      * @param benchmark      a function which will contain the benchmarked code
      * @param <A>            the argument type taken by the benchmark
      * @param <R>            the type returned by the benchmark and consumed by the resultConsumer
@@ -146,14 +258,24 @@ public final class BenchmarkFramework {
             BenchSupplier<A> argsSupplier,
             BenchConsumer<R> resultConsumer,
             BenchFunction<A, R> benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
         System.out.printf("Running: %s%n", name);
-        int max = repeat + warmup;
+        if (loop == AUTO_LOOP) {
+            A calibrationArgs = argsSupplier.get();
+            loop = Calibration.loop(() -> resultConsumer.accept(benchmark.apply(calibrationArgs)));
+        }
         long averageThroughput = 0L;
         double averageTimePerOp = 0.0d;
-        for (int i = 0; i < max; i++) {
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
             A args = argsSupplier.get();
             long numOperations = 0L;
             long duration = 0L;
+            probe.start();
             long start = System.currentTimeMillis();
             while (duration < runMillis) {
                 for (int j = 0; j < loop; j++) {
@@ -162,22 +284,33 @@ public final class BenchmarkFramework {
                 }
                 duration = System.currentTimeMillis() - start;
             }
+            probe.stop(numOperations);
             long throughput = numOperations / duration;
             double timePerOp = (duration * 1E6) / numOperations;
-            boolean benchRun = i >= warmup;
+            boolean benchRun = !iterations.isWarmup();
             if (benchRun) {
                 averageThroughput += throughput;
                 averageTimePerOp += timePerOp;
+                averageBytesPerOp += probe.bytesPerOp();
             }
             System.out.printf(
-                    "%d ops/ms (%.2f ns/op)%s%n",
+                    "%d ops/ms (%.2f ns/op%s)%s%n",
                     throughput,
                     timePerOp,
+                    probe.summary(),
                     (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed((double) numOperations / duration, probe);
         }
-        averageThroughput /= repeat;
-        averageTimePerOp /= repeat;
-        System.out.printf("[ ~%d ops/ms (%.2f ns/op)]%n%n", averageThroughput, averageTimePerOp);
+        averageThroughput /= iterations.measured();
+        averageTimePerOp /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf(
+                "[ ~%d ops/ms (%.2f ns/op%s)]%n%n",
+                averageThroughput,
+                averageTimePerOp,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportThroughput(name, iterations.samples(), averageTimePerOp, averageBytesPerOp);
     }
 
     /**
@@ -185,11 +318,13 @@ public final class BenchmarkFramework {
      *
      * @param name           the name of the benchmark (for display purposes)
      * @param runMillis      the duration of the benchmark (in milliseconds)
-     * @param loop           the number of times to execute the benchmarked code per time measurement
+     * @param loop           the number of times to execute the benchmarked code per time measurement, or
+     *                       {@link #AUTO_LOOP}
      * @param warmup         how many runs to execute before taking measurements
      * @param repeat         how many times to repeat the benchmark in total (after the warmup)
      * @param argsSupplier   supplier of arguments used for the benchmark, called once per trial
      * @param resultConsumer a consumer that will consume the values returned by the benchmark
+     *                       (e.g. a {@link Blackhole})
      * @param benchmark      a function which will contain the benchmarked code
      * @param <A>            the argument type taken by the benchmark
      */
@@ -202,14 +337,24 @@ public final class BenchmarkFramework {
             BenchSupplier<A> argsSupplier,
             BenchDoubleConsumer resultConsumer,
             BenchToDoubleFunction<A> benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
         System.out.printf("Running: %s%n", name);
-        int max = repeat + warmup;
+        if (loop == AUTO_LOOP) {
+            A calibrationArgs = argsSupplier.get();
+            loop = Calibration.loop(() -> resultConsumer.accept(benchmark.applyAsDouble(calibrationArgs)));
+        }
         long averageThroughput = 0L;
         double averageTimePerOp = 0.0d;
-        for (int i = 0; i < max; i++) {
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
             A args = argsSupplier.get();
             long numOperations = 0L;
             long duration = 0L;
+            probe.start();
             long start = System.currentTimeMillis();
             while (duration < runMillis) {
                 for (int j = 0; j < loop; j++) {
@@ -218,22 +363,691 @@ public final class BenchmarkFramework {
                 }
                 duration = System.currentTimeMillis() - start;
             }
+            probe.stop(numOperations);
+            long throughput = numOperations / duration;
+            double timePerOp = (duration * 1E6) / numOperations;
+            boolean benchRun = !iterations.isWarmup();
+            if (benchRun) {
+                averageThroughput += throughput;
+                averageTimePerOp += timePerOp;
+                averageBytesPerOp += probe.bytesPerOp();
+            }
+            System.out.printf(
+                    "%d ops/ms (%.2f ns/op%s)%s%n",
+                    throughput,
+                    timePerOp,
+                    probe.summary(),
+                    (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed((double) numOperations / duration, probe);
+        }
+        averageThroughput /= iterations.measured();
+        averageTimePerOp /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf(
+                "[ ~%d ops/ms (%.2f ns/op%s)]%n%n",
+                averageThroughput,
+                averageTimePerOp,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportThroughput(name, iterations.samples(), averageTimePerOp, averageBytesPerOp);
+    }
+
+    /**
+     * Runs a given benchmark with its own measurement loop and print the statistics.
+     *
+     * <p>The loop is usually generated for a method annotated with {@link NaiveBenchmark}, so the call to the
+     * benchmarked code is not shared with other benchmarks.
+     *
+     * @param name      the name of the benchmark (for display purposes)
+     * @param runMillis the duration of the benchmark (in milliseconds)
+     * @param loop      the number of times to execute the benchmarked code per time measurement, or {@link #AUTO_LOOP}
+     * @param warmup    how many runs to execute before taking measurements
+     * @param repeat    how many times to repeat the benchmark in total (after the warmup)
+     * @param benchLoop the measurement loop which will run the benchmarked code
+     */
+    public static void bench(
+            String name,
+            long runMillis,
+            int loop,
+            int warmup,
+            int repeat,
+            BenchLoop benchLoop) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        System.out.printf("Running: %s%n", name);
+        Blackhole blackhole = new Blackhole();
+        if (loop == AUTO_LOOP) {
+            loop = Calibration.loop(benchLoop, blackhole);
+        }
+        long averageThroughput = 0L;
+        double averageTimePerOp = 0.0d;
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
+            probe.start();
+            long start = System.currentTimeMillis();
+            long numOperations = benchLoop.run(runMillis, loop, blackhole);
+            long duration = System.currentTimeMillis() - start;
+            probe.stop(numOperations);
             long throughput = numOperations / duration;
             double timePerOp = (duration * 1E6) / numOperations;
-            boolean benchRun = i >= warmup;
+            boolean benchRun = !iterations.isWarmup();
             if (benchRun) {
                 averageThroughput += throughput;
                 averageTimePerOp += timePerOp;
+                averageBytesPerOp += probe.bytesPerOp();
             }
             System.out.printf(
-                    "%d ops/ms (%.2f ns/op)%s%n",
+                    "%d ops/ms (%.2f ns/op%s)%s%n",
                     throughput,
                     timePerOp,
+                    probe.summary(),
+                    (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed((double) numOperations / duration, probe);
+        }
+        averageThroughput /= iterations.measured();
+        averageTimePerOp /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf(
+                "[ ~%d ops/ms (%.2f ns/op%s)]%n%n",
+                averageThroughput,
+                averageTimePerOp,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportThroughput(name, iterations.samples(), averageTimePerOp, averageBytesPerOp);
+    }
+
+    /**
+     * Runs a given benchmark and print the latency distribution of its operations.
+     *
+     * <p>Each sample times a batch of operations with {@link System#nanoTime()} and records the average latency
+     * of that batch into a {@link LatencyHistogram}. With a batch of {@code 1}, every single operation is timed,
+     * which also includes the cost of calling the timer itself (usually in the tens of nanoseconds). Bigger batches
+     * amortize that cost, but smear outliers (e.g. a GC pause) across all the operations in the batch.
+     *
+     * @param name      the name of the benchmark (for display purposes)
+     * @param runMillis the duration of the benchmark (in milliseconds)
+     * @param batch     the number of times to execute the benchmarked code per time measurement, or
+     *                  {@link #AUTO_LOOP}
+     * @param warmup    how many runs to execute before taking measurements
+     * @param repeat    how many times to repeat the benchmark in total (after the warmup)
+     * @param benchmark a {@link Runnable} which will contain the benchmarked code
+     */
+    public static void benchLatency(
+            String name,
+            long runMillis,
+            int batch,
+            int warmup,
+            int repeat,
+            BenchRunnable benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        if (batch == AUTO_LOOP) {
+            batch = Calibration.batch(benchmark);
+        }
+        System.out.printf("Running: %s (latency, batch = %d)%n", name, batch);
+        long runNanos = runMillis * 1_000_000L;
+        LatencyHistogram iteration = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
+            iteration.reset();
+            probe.start();
+            long start = System.nanoTime();
+            long end;
+            do {
+                long sampleStart = System.nanoTime();
+                for (int j = 0; j < batch; j++) {
+                    benchmark.run();
+                }
+                end = System.nanoTime();
+                iteration.record((end - sampleStart) / batch, batch);
+            } while (end - start < runNanos);
+            probe.stop(iteration.count());
+            boolean benchRun = !iterations.isWarmup();
+            if (benchRun) {
+                total.add(iteration);
+                averageBytesPerOp += probe.bytesPerOp();
+            }
+            System.out.printf(
+                    "%s%s%s%n",
+                    iteration.summary(),
+                    probe.summary(),
+                    (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed(iteration.percentile(50.0d), probe);
+        }
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf("[ %s%s ]%n%n", total.summary(), IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportLatency(name, batch, iterations.samples(), total, averageBytesPerOp);
+    }
+
+    /**
+     * Runs a given benchmark and print the latency distribution of its operations.
+     *
+     * @param name           the name of the benchmark (for display purposes)
+     * @param runMillis      the duration of the benchmark (in milliseconds)
+     * @param batch          the number of times to execute the benchmarked code per time measurement, or
+     *                       {@link #AUTO_LOOP}
+     * @param warmup         how many runs to execute before taking measurements
+     * @param repeat         how many times to repeat the benchmark in total (after the warmup)
+     * @param argsSupplier   supplier of arguments used for the benchmark, called once per trial
+     * @param resultConsumer a consumer that will consume the values returned by the benchmark
+     *                       (e.g. a {@link Blackhole})
+     * @param benchmark      a function which will contain the benchmarked code
+     * @param <A>            the argument type taken by the benchmark
+     * @param <R>            the type returned by the benchmark and consumed by the resultConsumer
+     * @see #benchLatency(String, long, int, int, int, BenchRunnable)
+     */
+    public static <A, R> void benchLatency(
+            String name,
+            long runMillis,
+            int batch,
+            int warmup,
+            int repeat,
+            BenchSupplier<A> argsSupplier,
+            BenchConsumer<R> resultConsumer,
+            BenchFunction<A, R> benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        if (batch == AUTO_LOOP) {
+            A calibrationArgs = argsSupplier.get();
+            batch = Calibration.batch(() -> resultConsumer.accept(benchmark.apply(calibrationArgs)));
+        }
+        System.out.printf("Running: %s (latency, batch = %d)%n", name, batch);
+        long runNanos = runMillis * 1_000_000L;
+        LatencyHistogram iteration = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
+            A args = argsSupplier.get();
+            iteration.reset();
+            probe.start();
+            long start = System.nanoTime();
+            long end;
+            do {
+                long sampleStart = System.nanoTime();
+                for (int j = 0; j < batch; j++) {
+                    resultConsumer.accept(benchmark.apply(args));
+                }
+                end = System.nanoTime();
+                iteration.record((end - sampleStart) / batch, batch);
+            } while (end - start < runNanos);
+            probe.stop(iteration.count());
+            boolean benchRun = !iterations.isWarmup();
+            if (benchRun) {
+                total.add(iteration);
+                averageBytesPerOp += probe.bytesPerOp();
+            }
+            System.out.printf(
+                    "%s%s%s%n",
+                    iteration.summary(),
+                    probe.summary(),
+                    (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed(iteration.percentile(50.0d), probe);
+        }
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf("[ %s%s ]%n%n", total.summary(), IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportLatency(name, batch, iterations.samples(), total, averageBytesPerOp);
+    }
+
+    /**
+     * Runs a given benchmark at a fixed rate and print the latency distribution of its operations, including the
+     * time they spent waiting for the previous ones to complete.
+     *
+     * <p>All the other methods run a closed loop: the next operation only starts when the previous one completes,
+     * so a slow operation also delays the ones after it, which are never measured as slow. This is known as
+     * <em>coordinated omission</em>, and it hides the queueing delay any real system with requests arriving at
+     * their own pace would see. Here, the operations are scheduled at fixed intervals instead, and the latency of each
+     * one is measured from the time it should have started. If the benchmarked code can't keep up with the rate,
+     * the operations fall behind schedule and their latencies grow with the backlog. Each run still ends after
+     * {@code runMillis}, and the operations which were still waiting to start are not recorded, so the latencies
+     * past the highest sustainable rate are only a lower bound.
+     *
+     * <p>The wait between operations is a busy-spin, so this keeps a CPU busy even at low rates. The score is the
+     * 99th percentile of the latency: running this for increasing rates (e.g. with a {@link ParameterMatrix}) shows
+     * the highest rate the code can sustain before the tail latency blows up.
+     *
+     * <p>Reference: <a href="https://www.youtube.com/watch?v=lJ8ydIuPFeU">How NOT to Measure Latency</a>.
+     *
+     * @param name      the name of the benchmark (for display purposes)
+     * @param runMillis the duration of the benchmark (in milliseconds)
+     * @param rate      the number of operations to start per second
+     * @param warmup    how many runs to execute before taking measurements
+     * @param repeat    how many times to repeat the benchmark in total (after the warmup)
+     * @param benchmark a {@link Runnable} which will contain the benchmarked code
+     */
+    public static void benchOpenLoop(
+            String name,
+            long runMillis,
+            long rate,
+            int warmup,
+            int repeat,
+            BenchRunnable benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        if (rate <= 0L) {
+            throw new IllegalArgumentException("Invalid rate: %d. Must be at least 1".formatted(rate));
+        }
+        System.out.printf("Running: %s (open loop, %d ops/s)%n", name, rate);
+        long runNanos = runMillis * 1_000_000L;
+        double intervalNanos = 1E9 / rate;
+        LatencyHistogram iteration = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        double averageRate = 0.0d;
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
+            iteration.reset();
+            probe.start();
+            long start = System.nanoTime();
+            long intendedStart = start;
+            long end;
+            long numOperations = 0L;
+            do {
+                while (System.nanoTime() < intendedStart) {
+                    Thread.onSpinWait();
+                }
+                benchmark.run();
+                end = System.nanoTime();
+                iteration.record(end - intendedStart);
+                numOperations++;
+                intendedStart = start + (long) (numOperations * intervalNanos);
+            } while (intendedStart - start < runNanos && end - start < runNanos);
+            probe.stop(numOperations);
+            double achievedRate = numOperations * 1E9 / (end - start);
+            boolean benchRun = !iterations.isWarmup();
+            if (benchRun) {
+                total.add(iteration);
+                averageRate += achievedRate;
+                averageBytesPerOp += probe.bytesPerOp();
+            }
+            System.out.printf(
+                    "%s, %.0f ops/s%s%s%n",
+                    iteration.summary(),
+                    achievedRate,
+                    probe.summary(),
+                    (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed(iteration.percentile(99.0d), probe);
+        }
+        averageRate /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf(
+                "[ %s, %.0f ops/s%s ]%n%n",
+                total.summary(),
+                averageRate,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportOpenLoop(name, rate, iterations.samples(), total, averageRate, averageBytesPerOp);
+    }
+
+    /**
+     * Runs a given benchmark at a fixed rate and print the latency distribution of its operations, including the
+     * time they spent waiting for the previous ones to complete.
+     *
+     * @param name           the name of the benchmark (for display purposes)
+     * @param runMillis      the duration of the benchmark (in milliseconds)
+     * @param rate           the number of operations to start per second
+     * @param warmup         how many runs to execute before taking measurements
+     * @param repeat         how many times to repeat the benchmark in total (after the warmup)
+     * @param argsSupplier   supplier of arguments used for the benchmark, called once per trial
+     * @param resultConsumer a consumer that will consume the values returned by the benchmark
+     *                       (e.g. a {@link Blackhole})
+     * @param benchmark      a function which will contain the benchmarked code
+     * @param <A>            the argument type taken by the benchmark
+     * @param <R>            the type returned by the benchmark and consumed by the resultConsumer
+     * @see #benchOpenLoop(String, long, long, int, int, BenchRunnable)
+     */
+    public static <A, R> void benchOpenLoop(
+            String name,
+            long runMillis,
+            long rate,
+            int warmup,
+            int repeat,
+            BenchSupplier<A> argsSupplier,
+            BenchConsumer<R> resultConsumer,
+            BenchFunction<A, R> benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        if (rate <= 0L) {
+            throw new IllegalArgumentException("Invalid rate: %d. Must be at least 1".formatted(rate));
+        }
+        System.out.printf("Running: %s (open loop, %d ops/s)%n", name, rate);
+        long runNanos = runMillis * 1_000_000L;
+        double intervalNanos = 1E9 / rate;
+        LatencyHistogram iteration = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        double averageRate = 0.0d;
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        IterationProbe probe = new IterationProbe();
+        while (iterations.hasNext()) {
+            A args = argsSupplier.get();
+            iteration.reset();
+            probe.start();
+            long start = System.nanoTime();
+            long intendedStart = start;
+            long end;
+            long numOperations = 0L;
+            do {
+                while (System.nanoTime() < intendedStart) {
+                    Thread.onSpinWait();
+                }
+                resultConsumer.accept(benchmark.apply(args));
+                end = System.nanoTime();
+                iteration.record(end - intendedStart);
+                numOperations++;
+                intendedStart = start + (long) (numOperations * intervalNanos);
+            } while (intendedStart - start < runNanos && end - start < runNanos);
+            probe.stop(numOperations);
+            double achievedRate = numOperations * 1E9 / (end - start);
+            boolean benchRun = !iterations.isWarmup();
+            if (benchRun) {
+                total.add(iteration);
+                averageRate += achievedRate;
+                averageBytesPerOp += probe.bytesPerOp();
+            }
+            System.out.printf(
+                    "%s, %.0f ops/s%s%s%n",
+                    iteration.summary(),
+                    achievedRate,
+                    probe.summary(),
                     (!benchRun ? " (warmup) | " : " | "));
+            iterations.completed(iteration.percentile(99.0d), probe);
+        }
+        averageRate /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        iterations.printWarnings();
+        System.out.printf(
+                "[ %s, %.0f ops/s%s ]%n%n",
+                total.summary(),
+                averageRate,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp));
+        reportOpenLoop(name, rate, iterations.samples(), total, averageRate, averageBytesPerOp);
+    }
+
+    /**
+     * Runs a given benchmark a number of times, measuring each invocation individually, and print how the latency
+     * changes from the first invocation on, as the code moves from the interpreter to C1 and then to C2.
+     *
+     * <p>There is no warmup: this measures the cost of the warmup itself, which is what matters for short-lived
+     * programs (e.g. batch jobs or command line tools) which never reach the steady state measured by the other
+     * methods. For the same reason, it's only meaningful in a fresh JVM, so it should be the only benchmark in its
+     * JVM, e.g. by running it with {@link ForkedRunner}. The score is the average latency of all invocations.
+     *
+     * @param name        the name of the benchmark (for display purposes)
+     * @param invocations how many invocations to measure
+     * @param benchmark   a {@link Runnable} which will contain the benchmarked code
+     * @see ColdStartTimeline
+     */
+    public static void benchSingleShot(String name, int invocations, BenchRunnable benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        System.out.printf("Running: %s (single shot, %d invocations)%n", name, invocations);
+        warnIfNotFirst();
+        ColdStartTimeline timeline = new ColdStartTimeline(invocations);
+        for (int i = 0; i < invocations; i++) {
+            long start = System.nanoTime();
+            benchmark.run();
+            long end = System.nanoTime();
+            timeline.record(i, end - start);
+        }
+        timeline.print();
+        reportSingleShot(name, timeline);
+    }
+
+    /**
+     * Runs a given benchmark a number of times, measuring each invocation individually, and print how the latency
+     * changes from the first invocation on, as the code moves from the interpreter to C1 and then to C2.
+     *
+     * @param name           the name of the benchmark (for display purposes)
+     * @param invocations    how many invocations to measure
+     * @param argsSupplier   supplier of arguments used for the benchmark, called before each invocation
+     *                       (outside the measurement)
+     * @param resultConsumer a consumer that will consume the values returned by the benchmark
+     *                       (e.g. a {@link Blackhole})
+     * @param benchmark      a function which will contain the benchmarked code
+     * @param <A>            the argument type taken by the benchmark
+     * @param <R>            the type returned by the benchmark and consumed by the resultConsumer
+     * @see #benchSingleShot(String, int, BenchRunnable)
+     */
+    public static <A, R> void benchSingleShot(
+            String name,
+            int invocations,
+            BenchSupplier<A> argsSupplier,
+            BenchConsumer<R> resultConsumer,
+            BenchFunction<A, R> benchmark) {
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        System.out.printf("Running: %s (single shot, %d invocations)%n", name, invocations);
+        warnIfNotFirst();
+        ColdStartTimeline timeline = new ColdStartTimeline(invocations);
+        for (int i = 0; i < invocations; i++) {
+            A args = argsSupplier.get();
+            long start = System.nanoTime();
+            R result = benchmark.apply(args);
+            long end = System.nanoTime();
+            resultConsumer.accept(result);
+            timeline.record(i, end - start);
+        }
+        timeline.print();
+        reportSingleShot(name, timeline);
+    }
+
+    private static void warnIfNotFirst() {
+        if (!ForkedRunner.isFirstBenchmark()) {
+            System.out.println(
+                    "WARNING: other benchmarks already ran in this JVM, so the code they share with this one is "
+                            + "already warm. Run it with ForkedRunner to measure a cold start.");
+        }
+    }
+
+    /**
+     * Runs a given benchmark on a number of threads at the same time and print the aggregated and per-thread
+     * statistics.
+     *
+     * <p>All threads start each run together and are measured over the same window of time.
+     *
+     * @param name      the name of the benchmark (for display purposes)
+     * @param runMillis the duration of the benchmark (in milliseconds)
+     * @param loop      the number of times to execute the benchmarked code between checks for the end of the run,
+     *                  or {@link #AUTO_LOOP}
+     * @param warmup    how many runs to execute before taking measurements
+     * @param repeat    how many times to repeat the benchmark in total (after the warmup)
+     * @param threads   the number of threads running the benchmark
+     * @param benchmark a {@link Runnable} which will contain the benchmarked code
+     */
+    public static void benchThreads(
+            String name,
+            long runMillis,
+            int loop,
+            int warmup,
+            int repeat,
+            int threads,
+            BenchRunnable benchmark) {
+        ThreadedBenchmark.Worker[] workers = new ThreadedBenchmark.Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new ThreadedBenchmark.RunnableWorker(benchmark);
+        }
+        ThreadedBenchmark.run(name, runMillis, loop, warmup, repeat, workers);
+    }
+
+    /**
+     * Runs a given benchmark on a number of threads at the same time and print the aggregated and per-thread
+     * statistics.
+     *
+     * <p>All threads start each run together and are measured over the same window of time. Each thread gets
+     * its own arguments and keeps the results in its own sink.
+     *
+     * @param name         the name of the benchmark (for display purposes)
+     * @param runMillis    the duration of the benchmark (in milliseconds)
+     * @param loop         the number of times to execute the benchmarked code between checks for the end of the
+     *                     run, or {@link #AUTO_LOOP}
+     * @param warmup       how many runs to execute before taking measurements
+     * @param repeat       how many times to repeat the benchmark in total (after the warmup)
+     * @param threads      the number of threads running the benchmark
+     * @param argsSupplier supplier of arguments used for the benchmark, called once per trial by each thread
+     * @param benchmark    a function which will contain the benchmarked code
+     * @param <A>          the argument type taken by the benchmark
+     * @param <R>          the type returned by the benchmark
+     */
+    public static <A, R> void benchThreads(
+            String name,
+            long runMillis,
+            int loop,
+            int warmup,
+            int repeat,
+            int threads,
+            BenchSupplier<A> argsSupplier,
+            BenchFunction<A, R> benchmark) {
+        ThreadedBenchmark.Worker[] workers = new ThreadedBenchmark.Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new ThreadedBenchmark.FunctionWorker<>(argsSupplier, benchmark);
+        }
+        ThreadedBenchmark.run(name, runMillis, loop, warmup, repeat, workers);
+    }
+
+    /**
+     * Runs a given benchmark on a number of threads at the same time and print the aggregated and per-thread
+     * statistics, avoiding boxing/unboxing costs.
+     *
+     * <p>All threads start each run together and are measured over the same window of time. Each thread gets
+     * its own arguments and keeps the results in its own sink.
+     *
+     * @param name         the name of the benchmark (for display purposes)
+     * @param runMillis    the duration of the benchmark (in milliseconds)
+     * @param loop         the number of times to execute the benchmarked code between checks for the end of the
+     *                     run, or {@link #AUTO_LOOP}
+     * @param warmup       how many runs to execute before taking measurements
+     * @param repeat       how many times to repeat the benchmark in total (after the warmup)
+     * @param threads      the number of threads running the benchmark
+     * @param argsSupplier supplier of arguments used for the benchmark, called once per trial by each thread
+     * @param benchmark    a function which will contain the benchmarked code
+     * @param <A>          the argument type taken by the benchmark
+     */
+    public static <A> void benchThreadsDouble(
+            String name,
+            long runMillis,
+            int loop,
+            int warmup,
+            int repeat,
+            int threads,
+            BenchSupplier<A> argsSupplier,
+            BenchToDoubleFunction<A> benchmark) {
+        ThreadedBenchmark.Worker[] workers = new ThreadedBenchmark.Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new ThreadedBenchmark.DoubleFunctionWorker<>(argsSupplier, benchmark);
+        }
+        ThreadedBenchmark.run(name, runMillis, loop, warmup, repeat, workers);
+    }
+
+    private static void reportThroughput(
+            String name,
+            double[] samples,
+            double averageTimePerOp,
+            double averageBytesPerOp) {
+        double score = 0.0d;
+        for (double sample : samples) {
+            score += sample;
+        }
+        Map<String, Double> secondary = new LinkedHashMap<>();
+        secondary.put("ns/op", averageTimePerOp);
+        putBytesPerOp(secondary, averageBytesPerOp);
+        ForkedRunner.report(new BenchmarkResult(
+                name,
+                Map.of(),
+                "thrpt",
+                score / samples.length,
+                "ops/ms",
+                samples,
+                secondary));
+    }
+
+    private static void reportLatency(
+            String name,
+            int batch,
+            double[] samples,
+            LatencyHistogram total,
+            double averageBytesPerOp) {
+        Map<String, Double> secondary = new LinkedHashMap<>();
+        secondary.put("p90 ns/op", (double) total.percentile(90.0d));
+        secondary.put("p99 ns/op", (double) total.percentile(99.0d));
+        secondary.put("p99.9 ns/op", (double) total.percentile(99.9d));
+        secondary.put("max ns/op", (double) total.max());
+        putBytesPerOp(secondary, averageBytesPerOp);
+        ForkedRunner.report(new BenchmarkResult(
+                name,
+                Map.of("batch", Integer.toString(batch)),
+                "sample",
+                total.percentile(50.0d),
+                "ns/op",
+                samples,
+                secondary));
+    }
+
+    private static void reportOpenLoop(
+            String name,
+            long rate,
+            double[] samples,
+            LatencyHistogram total,
+            double averageRate,
+            double averageBytesPerOp) {
+        if (averageRate < rate * 0.95d) {
+            System.out.printf(
+                    "WARNING: the benchmark could not keep up with the target rate: %.0f ops/s (target: %d ops/s)%n%n",
+                    averageRate,
+                    rate);
+        }
+        Map<String, Double> secondary = new LinkedHashMap<>();
+        secondary.put("ops/s", averageRate);
+        secondary.put("p50 ns/op", (double) total.percentile(50.0d));
+        secondary.put("p90 ns/op", (double) total.percentile(90.0d));
+        secondary.put("p99.9 ns/op", (double) total.percentile(99.9d));
+        secondary.put("max ns/op", (double) total.max());
+        putBytesPerOp(secondary, averageBytesPerOp);
+        ForkedRunner.report(new BenchmarkResult(
+                name,
+                Map.of("rate", Long.toString(rate)),
+                "open",
+                total.percentile(99.0d),
+                "ns/op",
+                samples,
+                secondary));
+    }
+
+    private static void reportSingleShot(String name, ColdStartTimeline timeline) {
+        double[] samples = timeline.samples();
+        Map<String, Double> secondary = new LinkedHashMap<>();
+        secondary.put("first ns/op", samples[0]);
+        secondary.putAll(timeline.medians());
+        ForkedRunner.report(new BenchmarkResult(
+                name,
+                Map.of(),
+                "ss",
+                timeline.mean(),
+                "ns/op",
+                samples,
+                secondary));
+    }
+
+    static void putBytesPerOp(Map<String, Double> secondary, double bytesPerOp) {
+        if (!Double.isNaN(bytesPerOp)) {
+            secondary.put("B/op", bytesPerOp);
         }
-        averageThroughput /= repeat;
-        averageTimePerOp /= repeat;
-        System.out.printf("[ ~%d ops/ms (%.2f ns/op)]%n%n", averageThroughput, averageTimePerOp);
     }
 
     private BenchmarkFramework() {
@@ -0,0 +1,49 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.Map;
+
+/**
+ * The result of running a benchmark with the {@link BenchmarkFramework}.
+ *
+ * @param name      the name of the benchmark
+ * @param params    the parameters the benchmark ran with (e.g. the number of threads), in a stable order
+ * @param mode      the benchmark mode, using the same abbreviations as JMH (e.g. {@code thrpt})
+ * @param score     the score of the benchmark
+ * @param unit      the unit of the score
+ * @param samples   the score of each measured iteration
+ * @param secondary other metrics collected alongside the score, keyed by their name, in a stable order
+ */
+public record BenchmarkResult(
+        String name,
+        Map<String, String> params,
+        String mode,
+        double score,
+        String unit,
+        double[] samples,
+        Map<String, Double> secondary) {
+
+    /**
+     * The confidence level of {@link #error()}, like the one used by JMH.
+     */
+    public static final double ERROR_CONFIDENCE = 0.999d;
+
+    /**
+     * The half-width of the 99.9% confidence interval of the score, or {@code NaN} if there are less than two samples.
+     */
+    public double error() {
+        return Statistics.confidenceHalfWidth(samples, samples.length, ERROR_CONFIDENCE);
+    }
+
+    /**
+     * The name of this benchmark followed by its parameters, if any (e.g. {@code point_fast (threads = 4)}).
+     */
+    public String label() {
+        if (params.isEmpty()) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(name).append(" (");
+        params.forEach((k, v) -> sb.append(k).append(" = ").append(v).append(", "));
+        sb.setLength(sb.length() - 2);
+        return sb.append(')').toString();
+    }
+}
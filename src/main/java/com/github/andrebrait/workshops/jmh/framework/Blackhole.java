@@ -0,0 +1,77 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+/**
+ * Consumes the results of a benchmark so the JIT compiler can't remove the code producing them as dead code,
+ * without boxing primitives or allocating anything.
+ *
+ * <p>Storing the results in a field is not enough: the JIT may see that only the last value is ever stored,
+ * and compute only that one (or keep the value in a register and only write it once, after the loop).
+ * Instead, each value is compared with {@code volatile} fields which can't possibly hold it. The JIT has to
+ * compute every value to compare it, and has to read the fields again every time, but the branch is never taken.
+ * Objects are compared by identity, which would let the JIT remove their allocation, so they're stored instead,
+ * but only once in a (long) while, to keep the cost of the store low.
+ *
+ * <p>This is the same approach used by JMH's {@code Blackhole} when the compiler-assisted blackholes are not
+ * available (see <a href="https://shipilev.net/jvm/anatomy-quarks/27-compiler-blackholes/">JVM Anatomy Quark #27:
+ * Compiler Blackholes</a>). It's not free, so the time to consume a value (around a nanosecond) is included
+ * in the results.
+ *
+ * <p>A {@link Blackhole} should not be shared by multiple threads, as they would contend on its fields.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * Blackhole blackhole = new Blackhole();
+ * BenchmarkFramework.benchDouble(name, RUN_MILLIS, LOOP, WARMUP, REPEAT, Operands::random, blackhole::consume, f);
+ * }</pre>
+ */
+public final class Blackhole {
+
+    // the values in each pair are different, so no value is ever equal to both
+    private volatile boolean b1 = false;
+    private volatile boolean b2 = true;
+    private volatile int i1 = 1;
+    private volatile int i2 = 2;
+    private volatile long l1 = 1L;
+    private volatile long l2 = 2L;
+    private volatile double d1 = 1.0d;
+    private volatile double d2 = 2.0d;
+    private volatile Object o;
+    private volatile int mask = 1;
+    private int seed;
+    // always null, so writing to it would throw
+    private Blackhole nullBait;
+
+    public void consume(boolean value) {
+        if (value == b1 & value == b2) {
+            nullBait.b1 = value;
+        }
+    }
+
+    public void consume(int value) {
+        if (value == i1 & value == i2) {
+            nullBait.i1 = value;
+        }
+    }
+
+    public void consume(long value) {
+        if (value == l1 & value == l2) {
+            nullBait.l1 = value;
+        }
+    }
+
+    public void consume(double value) {
+        if (value == d1 & value == d2) {
+            nullBait.d1 = value;
+        }
+    }
+
+    public void consume(Object value) {
+        int mask = this.mask;
+        // a linear congruential generator decides when to store the object
+        int seed = this.seed = this.seed * 1664525 + 1013904223;
+        if ((seed & mask) == 0) {
+            this.o = value;
+            this.mask = (mask << 1) + 1;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+/**
+ * Picks the number of times to execute a benchmark per time measurement, based on the cost of the benchmark
+ * and on the characteristics of the timers.
+ *
+ * <p>Reading the time is not free: it usually takes some tens of nanoseconds, which is more than many of the
+ * benchmarks in this project take. Executing the benchmark only once per time measurement would mostly measure
+ * the timer, while executing it too many times hides outliers and makes the end of each run less precise.
+ * The calibration estimates how long a single execution takes and then picks the smallest number of executions
+ * for which reading the timer costs no more than a given fraction of the measured time
+ * ({@value #DEFAULT_TIMER_OVERHEAD} by default, or the value of {@value #TIMER_OVERHEAD_PROPERTY}).
+ *
+ * <p>For latency measurements, the time measured per sample must also be much longer than the granularity
+ * of {@link System#nanoTime()}, otherwise most of each sample is rounding error.
+ *
+ * <p>Reference: <a href="https://shipilev.net/blog/2014/nanotrusting-nanotime/">Nanotrusting the Nanotime</a>.
+ */
+public final class Calibration {
+
+    public static final String TIMER_OVERHEAD_PROPERTY = "bench.timerOverhead";
+    public static final double DEFAULT_TIMER_OVERHEAD = 0.01d;
+
+    private static final double TIMER_OVERHEAD = Double.parseDouble(
+            System.getProperty(TIMER_OVERHEAD_PROPERTY, Double.toString(DEFAULT_TIMER_OVERHEAD)));
+    private static final long CALIBRATION_NANOS = 200_000_000L;
+    private static final long MIN_BATCH_NANOS = 10_000_000L;
+    private static final int TIMER_SAMPLES = 1_000_000;
+
+    /**
+     * Keeps the JIT from removing the timer calls whose results would otherwise be unused.
+     */
+    private static volatile long sink;
+
+    /**
+     * The characteristics of a timer.
+     *
+     * @param overheadNanos    how long it takes to read the timer, in nanoseconds
+     * @param granularityNanos the smallest difference between two readings of the timer, in nanoseconds
+     */
+    private record Timer(double overheadNanos, long granularityNanos) {
+    }
+
+    /**
+     * Executes the benchmark a number of times in a row.
+     */
+    @FunctionalInterface
+    private interface Batch {
+        void run(int size);
+    }
+
+    /**
+     * The timers are only measured once, when first needed.
+     */
+    private static final class Timers {
+
+        private static final Timer NANO_TIME = measureNanoTime();
+        private static final Timer CURRENT_TIME_MILLIS = measureCurrentTimeMillis();
+
+        static {
+            System.out.printf(
+                    "Timers: System.nanoTime() (~%.2f ns/call, granularity %d ns), "
+                            + "System.currentTimeMillis() (~%.2f ns/call, granularity %d ns)%n%n",
+                    NANO_TIME.overheadNanos(),
+                    NANO_TIME.granularityNanos(),
+                    CURRENT_TIME_MILLIS.overheadNanos(),
+                    CURRENT_TIME_MILLIS.granularityNanos());
+        }
+    }
+
+    /**
+     * Picks the number of executions per time measurement for a benchmark timed with
+     * {@link System#currentTimeMillis()}, like in {@link BenchmarkFramework#bench(String, long, int, int, int, BenchRunnable)}.
+     *
+     * @param benchmark the benchmarked code
+     * @return the number of executions per time measurement
+     */
+    public static int loop(BenchRunnable benchmark) {
+        Timer timer = Timers.CURRENT_TIME_MILLIS;
+        double timePerOp = measure(benchmark);
+        int loop = clamp(Math.ceil(timer.overheadNanos() / (TIMER_OVERHEAD * timePerOp)));
+        System.out.printf("Calibrated loop: %d (~%.2f ns/op)%n", loop, timePerOp);
+        return loop;
+    }
+
+    /**
+     * Picks the number of executions per time measurement for a benchmark with its own measurement loop, like in
+     * {@link BenchmarkFramework#bench(String, long, int, int, int, BenchLoop)}.
+     *
+     * <p>The loop is run for {@code 0} milliseconds with a growing number of executions, so the two timer readings of
+     * each run are spread over all of them, like they are in the measured runs.
+     *
+     * @param benchLoop the measurement loop which runs the benchmarked code
+     * @param blackhole where the loop puts the values returned by the benchmarked code
+     * @return the number of executions per time measurement
+     */
+    public static int loop(BenchLoop benchLoop, Blackhole blackhole) {
+        Timer timer = Timers.CURRENT_TIME_MILLIS;
+        double timePerOp = measure(size -> benchLoop.run(0L, size, blackhole));
+        int loop = clamp(Math.ceil(timer.overheadNanos() / (TIMER_OVERHEAD * timePerOp)));
+        System.out.printf("Calibrated loop: %d (~%.2f ns/op)%n", loop, timePerOp);
+        return loop;
+    }
+
+    /**
+     * Picks the number of executions per time measurement for a benchmark timed with {@link System#nanoTime()}
+     * before and after each batch of executions, like in
+     * {@link BenchmarkFramework#benchLatency(String, long, int, int, int, BenchRunnable)}.
+     *
+     * @param benchmark the benchmarked code
+     * @return the number of executions per time measurement
+     */
+    public static int batch(BenchRunnable benchmark) {
+        Timer timer = Timers.NANO_TIME;
+        double timePerOp = measure(benchmark);
+        double overheadBatch = (2.0d * timer.overheadNanos()) / (TIMER_OVERHEAD * timePerOp);
+        double granularityBatch = timer.granularityNanos() / (TIMER_OVERHEAD * timePerOp);
+        int batch = clamp(Math.ceil(Math.max(overheadBatch, granularityBatch)));
+        System.out.printf("Calibrated batch: %d (~%.2f ns/op)%n", batch, timePerOp);
+        return batch;
+    }
+
+    /**
+     * Estimates how long a single execution of the benchmark takes.
+     *
+     * <p>The benchmark is executed in batches of increasing size until a batch takes long enough to be measured
+     * precisely, and then in batches of that size for the rest of the calibration time. The fastest batch is used,
+     * as it's the closest to the benchmark's performance once it's compiled.
+     */
+    private static double measure(BenchRunnable benchmark) {
+        return measure(size -> {
+            for (int j = 0; j < size; j++) {
+                benchmark.run();
+            }
+        });
+    }
+
+    private static double measure(Batch batches) {
+        long calibrationStart = System.nanoTime();
+        int batch = 1;
+        double best = Double.MAX_VALUE;
+        long elapsed;
+        do {
+            long start = System.nanoTime();
+            batches.run(batch);
+            long duration = System.nanoTime() - start;
+            if (duration >= MIN_BATCH_NANOS || batch > Integer.MAX_VALUE / 2) {
+                best = Math.min(best, (double) duration / batch);
+            } else {
+                batch *= 2;
+            }
+            elapsed = System.nanoTime() - calibrationStart;
+        } while (elapsed < CALIBRATION_NANOS || best == Double.MAX_VALUE);
+        return best;
+    }
+
+    private static Timer measureNanoTime() {
+        long sum = 0L;
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMER_SAMPLES; i++) {
+            sum += System.nanoTime();
+        }
+        double overhead = (double) (System.nanoTime() - start) / TIMER_SAMPLES;
+        long granularity = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long t0 = System.nanoTime();
+            long t1;
+            while ((t1 = System.nanoTime()) == t0) {
+                sum++;
+            }
+            granularity = Math.min(granularity, t1 - t0);
+        }
+        sink = sum;
+        return new Timer(overhead, granularity);
+    }
+
+    private static Timer measureCurrentTimeMillis() {
+        long sum = 0L;
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMER_SAMPLES; i++) {
+            sum += System.currentTimeMillis();
+        }
+        double overhead = (double) (System.nanoTime() - start) / TIMER_SAMPLES;
+        long granularity = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long t0 = System.currentTimeMillis();
+            long t1;
+            while ((t1 = System.currentTimeMillis()) == t0) {
+                sum++;
+            }
+            granularity = Math.min(granularity, (t1 - t0) * 1_000_000L);
+        }
+        sink = sum;
+        return new Timer(overhead, granularity);
+    }
+
+    private static int clamp(double loop) {
+        return (int) Math.max(1.0d, Math.min(loop, Integer.MAX_VALUE));
+    }
+
+    private Calibration() {
+        // util class
+    }
+}
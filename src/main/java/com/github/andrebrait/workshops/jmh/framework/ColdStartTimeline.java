@@ -0,0 +1,158 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The latency of each of the first invocations of a benchmark, used by the single shot mode of
+ * {@link BenchmarkFramework}.
+ *
+ * <p>Besides the latency of each invocation, it keeps track of the time spent by the JIT compiler and of the number
+ * of garbage collections after each of them, so the steps in the latency curve can be matched with the code moving
+ * from the interpreter to C1 and then to C2. Java code can't ask which tier a method is running on, so this only shows
+ * <em>when</em> the JIT was busy. To see <em>what</em> it compiled, run the benchmark with
+ * {@code -XX:+PrintCompilation}.
+ *
+ * <p>The invocations are grouped in windows which grow exponentially ({@code 1}, {@code 2-3}, {@code 4-10},
+ * {@code 11-30}, ...), as the curve changes the most in the first invocations. With the default tiered compilation
+ * thresholds, a method is usually compiled by C1 after about 200 invocations (or fewer, if it has loops) and by C2
+ * after a few thousand.
+ *
+ * <p>Reading the JIT and GC counters goes through the management beans, which is much slower than a fast invocation
+ * and may allocate, so {@link #record(int, long)} only reads them after the last invocation of each window (a couple
+ * of times per order of magnitude). For every other invocation, it only stores the latency in a preallocated array.
+ */
+final class ColdStartTimeline {
+
+    private final long[] latencies;
+    private final List<int[]> windows;
+    // the totals of the JIT and GC counters after the last invocation of each window
+    private final long[] compilationMillis;
+    private final long[] gcCounts;
+    private final long initialCompilationMillis;
+    private final long initialGcCount;
+    private int nextWindow;
+
+    /**
+     * @param invocations the number of invocations to record
+     */
+    ColdStartTimeline(int invocations) {
+        if (invocations <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid number of invocations: %d. Must be at least 1".formatted(invocations));
+        }
+        latencies = new long[invocations];
+        windows = windows(invocations);
+        compilationMillis = new long[windows.size()];
+        gcCounts = new long[windows.size()];
+        initialCompilationMillis = IterationProbe.totalCompilationMillis();
+        initialGcCount = IterationProbe.totalGcCount();
+    }
+
+    /**
+     * Records the latency of an invocation. Must be called right after it, outside the timed section, for every
+     * invocation in order.
+     *
+     * @param invocation the index of the invocation, starting at {@code 0}
+     * @param latency    the latency of the invocation (in nanoseconds)
+     */
+    void record(int invocation, long latency) {
+        latencies[invocation] = latency;
+        if (invocation == windows.get(nextWindow)[1]) {
+            compilationMillis[nextWindow] = IterationProbe.totalCompilationMillis();
+            gcCounts[nextWindow] = IterationProbe.totalGcCount();
+            nextWindow++;
+        }
+    }
+
+    /**
+     * The latency of every invocation (in nanoseconds), in order.
+     */
+    double[] samples() {
+        double[] samples = new double[latencies.length];
+        for (int i = 0; i < latencies.length; i++) {
+            samples[i] = latencies[i];
+        }
+        return samples;
+    }
+
+    /**
+     * The average latency of all invocations (in nanoseconds), which is the cost per invocation of a program running
+     * the benchmarked code only this many times.
+     */
+    double mean() {
+        return Statistics.mean(samples(), latencies.length);
+    }
+
+    /**
+     * The median latency of the invocations in each window (in nanoseconds), keyed by {@code "p50 ns/op [first-last]"},
+     * with the invocations counted from {@code 1}.
+     */
+    Map<String, Double> medians() {
+        Map<String, Double> medians = new LinkedHashMap<>();
+        for (int[] window : windows) {
+            medians.put("p50 ns/op [%s]".formatted(label(window)), median(window));
+        }
+        return medians;
+    }
+
+    /**
+     * Prints the latency curve, one line per window.
+     */
+    void print() {
+        String format = "%14s  %14s  %14s  %14s  %8s  %4s%n";
+        System.out.printf(format, "Invocations", "Median ns/op", "Min ns/op", "Max ns/op", "JIT ms", "GCs");
+        for (int w = 0; w < windows.size(); w++) {
+            int[] window = windows.get(w);
+            long[] sorted = Arrays.copyOfRange(latencies, window[0], window[1] + 1);
+            Arrays.sort(sorted);
+            long compilationBefore = w == 0 ? initialCompilationMillis : compilationMillis[w - 1];
+            long gcBefore = w == 0 ? initialGcCount : gcCounts[w - 1];
+            System.out.printf(
+                    format,
+                    label(window),
+                    "%.0f".formatted(median(window)),
+                    sorted[0],
+                    sorted[sorted.length - 1],
+                    compilationMillis[w] - compilationBefore,
+                    gcCounts[w] - gcBefore);
+        }
+        System.out.println();
+    }
+
+    private double median(int[] window) {
+        double[] sorted = new double[window[1] - window[0] + 1];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies[window[0] + i];
+        }
+        Arrays.sort(sorted);
+        return Statistics.percentile(sorted, 50.0d);
+    }
+
+    /**
+     * The first and last index of the invocations in each window: 1, 2-3, 4-10, 11-30, 31-100, ...
+     */
+    private static List<int[]> windows(int invocations) {
+        List<int[]> windows = new ArrayList<>();
+        int first = 0;
+        long end = 1L;
+        boolean three = true;
+        while (first < invocations) {
+            int last = (int) Math.min(end, invocations) - 1;
+            windows.add(new int[]{first, last});
+            first = last + 1;
+            end = three ? end * 3L : end * 10L / 3L;
+            three = !three;
+        }
+        return windows;
+    }
+
+    private static String label(int[] window) {
+        return window[0] == window[1]
+                ? Integer.toString(window[0] + 1)
+                : "%d-%d".formatted(window[0] + 1, window[1] + 1);
+    }
+}
@@ -0,0 +1,422 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import com.github.andrebrait.workshops.jmh.utils.SystemInfoUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Runs every benchmark of a "naive" benchmark class in its own JVM, a number of times (forks).
+ *
+ * <p>When all benchmarks share the same JVM, the profile collected by the JIT for the call sites in
+ * {@link BenchmarkFramework} is polluted by all the benchmarks that ran before, so the results depend
+ * on the order the benchmarks are executed. Running each benchmark in a fresh JVM (like JMH does with
+ * {@code @Fork}) avoids that, and repeating it in a few JVMs shows how much the results vary between runs.
+ *
+ * <p>The benchmark class is executed once to list the names of its benchmarks and then once per fork
+ * for each benchmark, with {@link BenchmarkFramework} skipping every benchmark but the selected one. The children
+ * write their results to the standard output, which is read by this runner through a pipe.
+ *
+ * <p>The environment is checked by this runner right before starting each fork (see
+ * {@link SystemInfoUtils#checkEnvironment()}), and its metrics are passed to the fork to be added to its results,
+ * so the check (which loads OSHI and samples the load for a while) never runs in the JVM being measured. When this
+ * runner is itself a job of a {@link SuiteRunner}, the environment checked by the suite is passed on instead.
+ *
+ * <p>Usage: {@code ForkedRunner <main class> [args...]}, with the following (optional) system properties:
+ * <ul>
+ *     <li>{@value #FORKS_PROPERTY}: the number of forks per benchmark (default: {@value #DEFAULT_FORKS})</li>
+ *     <li>{@value #JVM_ARGS_PROPERTY}: space-separated arguments for the forked JVMs, added after the arguments of
+ *     this JVM, which the forks inherit (e.g. {@code -Xmx} or {@code --add-modules}), like JMH forks do</li>
+ *     <li>{@value #ENV_CHECK_PROPERTY}: {@code false} to skip checking the environment (see
+ *     {@link #ENV_CHECK_PROPERTY})</li>
+ *     <li>{@value ResultExport#JSON_PROPERTY} and {@value ResultExport#CSV_PROPERTY}: files to write the merged
+ *     results to (see {@link ResultExport})</li>
+ *     <li>{@value ResultCache#CACHE_PROPERTY}: a directory to store the results of each benchmark in, so the ones
+ *     which did not change since their last run are not run again (see {@link ResultCache})</li>
+ * </ul>
+ *
+ * <p>The program arguments are passed to the main class, so the benchmarks which ask which benchmark to run
+ * should receive it as an argument (e.g. {@code SuperDuperBenchmark_Fix1 allan}).
+ */
+public final class ForkedRunner {
+
+    public static final String FORKS_PROPERTY = "bench.forks";
+    public static final String JVM_ARGS_PROPERTY = "bench.jvmArgs";
+    public static final int DEFAULT_FORKS = 3;
+
+    /**
+     * Whether to check the environment (see {@link SystemInfoUtils#checkEnvironment()}). The runners check it before
+     * starting the JVMs which run the benchmarks, unless this is {@code false}. A JVM running its benchmarks on its own
+     * only checks it, before the first one, if this is {@code true}, as the check disturbs the benchmarks after it.
+     */
+    public static final String ENV_CHECK_PROPERTY = "bench.envCheck";
+
+    /**
+     * Only the benchmark with this name is executed.
+     */
+    static final String INCLUDE_PROPERTY = "bench.include";
+
+    /**
+     * No benchmark is executed, their names are written to the standard output instead.
+     */
+    static final String LIST_PROPERTY = "bench.list";
+
+    /**
+     * The results are written to the standard output in a format this runner can read.
+     */
+    static final String FORKED_PROPERTY = "bench.forked";
+
+    /**
+     * The metrics of the environment, checked by the runner (this one or a {@link SuiteRunner}) which started the JVM.
+     */
+    static final String ENVIRONMENT_PROPERTY = "bench.environment";
+
+    private static final String BENCHMARK_PREFIX = "@benchmark\t";
+    private static final String RESULT_PREFIX = "@result\t";
+
+    // how many benchmarks ran in this JVM so far
+    private static int benchmarksRun;
+    // checked before the first benchmark (or by the runner which started this JVM), and added to all the results
+    private static SystemInfoUtils.Environment environment;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Usage: ForkedRunner <main class> [args...]");
+        }
+        int forks = Integer.getInteger(FORKS_PROPERTY, DEFAULT_FORKS);
+        String jvmArgs = System.getProperty(JVM_ARGS_PROPERTY, "").strip();
+        List<BenchmarkResult> results = run(
+                args[0],
+                forks,
+                jvmArgs.isEmpty() ? List.of() : List.of(jvmArgs.split(" +")),
+                Arrays.copyOfRange(args, 1, args.length));
+        ResultTable.print(results);
+        ResultExport.write(results);
+    }
+
+    /**
+     * Runs each benchmark of the given class in a number of freshly started JVMs.
+     *
+     * @param mainClass the name of the class with the {@code main} method which runs the benchmarks
+     * @param forks     how many JVMs to start for each benchmark
+     * @param jvmArgs   additional arguments for the forked JVMs, after the ones inherited from this JVM
+     * @param args      the arguments for the {@code main} method
+     * @return the results of each benchmark, merged across all forks
+     */
+    public static List<BenchmarkResult> run(String mainClass, int forks, List<String> jvmArgs, String... args) {
+        if (forks <= 0) {
+            throw new IllegalArgumentException("Invalid number of forks: %d. Must be at least 1".formatted(forks));
+        }
+        List<String> forkJvmArgs = new ArrayList<>(inheritedJvmArgs());
+        forkJvmArgs.addAll(jvmArgs);
+        List<String> names = new ArrayList<>();
+        fork(mainClass, forkJvmArgs, Map.of(LIST_PROPERTY, "true"), args, line -> {
+            if (line.startsWith(BENCHMARK_PREFIX) && !names.contains(line.substring(BENCHMARK_PREFIX.length()))) {
+                names.add(line.substring(BENCHMARK_PREFIX.length()));
+            }
+        });
+        List<BenchmarkResult> merged = new ArrayList<>();
+        for (String name : names) {
+            String fingerprint = null;
+            if (ResultCache.isEnabled()) {
+                List<String> settings = new ArrayList<>(List.of(name, Integer.toString(forks)));
+                settings.addAll(forkJvmArgs);
+                settings.add("--");
+                settings.addAll(List.of(args));
+                fingerprint = ResultCache.fingerprint(mainClass, settings);
+                List<BenchmarkResult> cached = ResultCache.results(fingerprint);
+                if (cached != null) {
+                    System.out.printf("# Unchanged since its last run, reusing its results: %s%n", name);
+                    cached.forEach(ResultTable::printSummary);
+                    merged.addAll(cached);
+                    continue;
+                }
+            }
+            Map<String, List<BenchmarkResult>> resultsByKey = new LinkedHashMap<>();
+            for (int f = 1; f <= forks; f++) {
+                System.out.printf("# Fork: %d of %d (%s)%n", f, forks, name);
+                Map<String, String> properties = new LinkedHashMap<>();
+                properties.put(INCLUDE_PROPERTY, name);
+                properties.put(FORKED_PROPERTY, "true");
+                if (System.getProperty(ENVIRONMENT_PROPERTY) != null) {
+                    // checked once by the suite, as the other jobs running now would count as noise here
+                    properties.put(ENVIRONMENT_PROPERTY, System.getProperty(ENVIRONMENT_PROPERTY));
+                } else if (!"false".equals(System.getProperty(ENV_CHECK_PROPERTY))) {
+                    SystemInfoUtils.Environment forkEnvironment = SystemInfoUtils.checkEnvironment();
+                    SystemInfoUtils.printEnvironment(forkEnvironment);
+                    properties.put(ENVIRONMENT_PROPERTY, encodeMetrics(forkEnvironment.metrics()));
+                }
+                fork(mainClass, forkJvmArgs, properties, args, line -> {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        BenchmarkResult result = decode(line);
+                        resultsByKey.computeIfAbsent(result.label() + '\t' + result.mode(), k -> new ArrayList<>())
+                                .add(result);
+                    } else {
+                        System.out.println(line);
+                    }
+                });
+            }
+            List<BenchmarkResult> results = new ArrayList<>();
+            for (List<BenchmarkResult> forkResults : resultsByKey.values()) {
+                results.add(merge(forkResults));
+            }
+            if (fingerprint != null) {
+                ResultCache.store(fingerprint, results);
+            }
+            merged.addAll(results);
+        }
+        return merged;
+    }
+
+    /**
+     * The arguments of this JVM, except for the system properties this runner sets for each fork.
+     */
+    private static List<String> inheritedJvmArgs() {
+        List<String> inherited = new ArrayList<>();
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            boolean own = false;
+            for (String property : List.of(INCLUDE_PROPERTY, LIST_PROPERTY, FORKED_PROPERTY, ENVIRONMENT_PROPERTY)) {
+                own |= arg.startsWith("-D%s=".formatted(property)) || arg.equals("-D" + property);
+            }
+            if (!own) {
+                inherited.add(arg);
+            }
+        }
+        return inherited;
+    }
+
+    /**
+     * Starts a JVM running the given class and passes each line of its standard output to a consumer.
+     */
+    private static void fork(
+            String mainClass,
+            List<String> jvmArgs,
+            Map<String, String> properties,
+            String[] args,
+            BenchConsumer<String> lineConsumer) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        properties.forEach((k, v) -> command.add("-D%s=%s".formatted(k, v)));
+        command.add(mainClass);
+        command.addAll(List.of(args));
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectInput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineConsumer.accept(line);
+                }
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IllegalStateException("Forked JVM exited with code %d: %s".formatted(exitCode, command));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a forked JVM: %s".formatted(command), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a forked JVM", e);
+        }
+    }
+
+    /**
+     * Merges the results of the same benchmark obtained in different forks.
+     *
+     * <p>The scores and secondary metrics are averaged and the samples are concatenated. Each secondary metric is
+     * averaged over the forks which reported it, as some are left out when not available (e.g. the environment
+     * metrics). For percentiles, the average is only an approximation of the percentile over all forks.
+     */
+    private static BenchmarkResult merge(List<BenchmarkResult> results) {
+        BenchmarkResult first = results.get(0);
+        double score = 0.0d;
+        Map<String, Double> secondary = new LinkedHashMap<>();
+        Map<String, Integer> reported = new HashMap<>();
+        double[] samples = new double[0];
+        for (BenchmarkResult result : results) {
+            score += result.score();
+            result.secondary().forEach((k, v) -> {
+                secondary.merge(k, v, Double::sum);
+                reported.merge(k, 1, Integer::sum);
+            });
+            int length = samples.length;
+            samples = Arrays.copyOf(samples, length + result.samples().length);
+            System.arraycopy(result.samples(), 0, samples, length, result.samples().length);
+        }
+        secondary.replaceAll((k, v) -> v / reported.get(k));
+        return new BenchmarkResult(
+                first.name(),
+                first.params(),
+                first.mode(),
+                score / results.size(),
+                first.unit(),
+                samples,
+                secondary);
+    }
+
+    /**
+     * Whether the benchmark with the given name should run in this JVM. When listing the benchmarks, this
+     * writes the name to the standard output and returns {@code false}.
+     */
+    static boolean isIncluded(String name) {
+        if (Boolean.getBoolean(LIST_PROPERTY)) {
+            System.out.println(BENCHMARK_PREFIX + name);
+            return false;
+        }
+        String include = System.getProperty(INCLUDE_PROPERTY);
+        if (include == null || include.equals(name)) {
+            if (benchmarksRun++ == 0) {
+                String metrics = System.getProperty(ENVIRONMENT_PROPERTY);
+                if (metrics != null) {
+                    environment = decodeEnvironment(metrics);
+                } else if (!Boolean.getBoolean(FORKED_PROPERTY) && Boolean.getBoolean(ENV_CHECK_PROPERTY)) {
+                    environment = SystemInfoUtils.checkEnvironment();
+                    SystemInfoUtils.printEnvironment(environment);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The environment checked by the runner, from the metrics it passed to this JVM. The warnings were already
+     * printed by the runner.
+     */
+    private static SystemInfoUtils.Environment decodeEnvironment(String encoded) {
+        Map<String, Double> metrics = decodeMetrics(encoded);
+        return new SystemInfoUtils.Environment(metrics.getOrDefault("env.noise", Double.NaN), metrics, List.of());
+    }
+
+    /**
+     * Whether the benchmark running now is the first one to run in this JVM, so none of the code it shares with
+     * other benchmarks was warmed up (or compiled) by them.
+     */
+    static boolean isFirstBenchmark() {
+        return benchmarksRun <= 1;
+    }
+
+    /**
+     * Adds the parameters of the {@link ParameterMatrix} combination being run (if any) and the metrics of the
+     * environment (as secondary metrics) to a result, prints its statistics and writes it to the standard output if this JVM was started by a
+     * {@link ForkedRunner}, or to the files set up for {@link ResultExport} otherwise.
+     */
+    static void report(BenchmarkResult benchmarkResult) {
+        BenchmarkResult result = ParameterMatrix.withCurrentParams(withEnvironment(benchmarkResult));
+        ResultTable.printSummary(result);
+        if (Boolean.getBoolean(FORKED_PROPERTY)) {
+            System.out.println(encode(result));
+        } else {
+            ResultExport.record(result);
+        }
+    }
+
+    private static BenchmarkResult withEnvironment(BenchmarkResult result) {
+        if (environment == null) {
+            return result;
+        }
+        Map<String, Double> secondary = new LinkedHashMap<>(result.secondary());
+        environment.metrics().forEach((k, v) -> {
+            if (!Double.isNaN(v)) {
+                secondary.put(k, v);
+            }
+        });
+        return new BenchmarkResult(
+                result.name(),
+                result.params(),
+                result.mode(),
+                result.score(),
+                result.unit(),
+                result.samples(),
+                secondary);
+    }
+
+    static String encode(BenchmarkResult result) {
+        StringJoiner samples = new StringJoiner(",");
+        for (double sample : result.samples()) {
+            samples.add(Double.toString(sample));
+        }
+        StringJoiner params = new StringJoiner("&");
+        result.params().forEach((k, v) -> params.add(escape(k) + '=' + escape(v)));
+        return String.join(
+                "\t",
+                RESULT_PREFIX.strip(),
+                escape(result.name()),
+                params.toString(),
+                escape(result.mode()),
+                Double.toString(result.score()),
+                escape(result.unit()),
+                samples.toString(),
+                encodeMetrics(result.secondary()));
+    }
+
+    static BenchmarkResult decode(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 8) {
+            throw new IllegalArgumentException("Invalid result: %s".formatted(line));
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        for (String param : split(fields[2], "&")) {
+            String[] kv = param.split("=", 2);
+            params.put(unescape(kv[0]), unescape(kv[1]));
+        }
+        String[] sampleValues = split(fields[6], ",");
+        double[] samples = new double[sampleValues.length];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = Double.parseDouble(sampleValues[i]);
+        }
+        return new BenchmarkResult(
+                unescape(fields[1]),
+                params,
+                unescape(fields[3]),
+                Double.parseDouble(fields[4]),
+                unescape(fields[5]),
+                samples,
+                decodeMetrics(fields[7]));
+    }
+
+    static String encodeMetrics(Map<String, Double> metrics) {
+        StringJoiner encoded = new StringJoiner("&");
+        metrics.forEach((k, v) -> encoded.add(escape(k) + '=' + v));
+        return encoded.toString();
+    }
+
+    private static Map<String, Double> decodeMetrics(String metrics) {
+        Map<String, Double> decoded = new LinkedHashMap<>();
+        for (String metric : split(metrics, "&")) {
+            String[] kv = metric.split("=", 2);
+            decoded.put(unescape(kv[0]), Double.parseDouble(kv[1]));
+        }
+        return decoded;
+    }
+
+    private static String[] split(String s, String separator) {
+        return s.isEmpty() ? new String[0] : s.split(separator);
+    }
+
+    private static String escape(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String unescape(String s) {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
+    private ForkedRunner() {
+        // this is a utility class
+    }
+}
@@ -0,0 +1,155 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import oshi.SystemInfo;
+import oshi.hardware.CentralProcessor;
+
+/**
+ * Samples the frequency and load of each CPU and the number of context switches in a background thread, so they
+ * can be correlated with the scores of each iteration (see {@link IterationProbe}).
+ *
+ * <p>Creating the OSHI {@link SystemInfo} and reading the counters is expensive (on Linux, it reads a few files in
+ * {@code /proc} and {@code /sys}), so it's all done once per JVM, before the first warmup iteration, and from then on
+ * only by the sampling thread. The thread running the benchmark only takes a snapshot of the accumulated samples
+ * right before and right after each iteration. The sampling thread sleeps most of the time, but it's still one more
+ * thread competing for the CPUs, so the sampler is disabled unless
+ * {@value BenchmarkFramework#HARDWARE_SAMPLER_PROPERTY} is set.
+ *
+ * <p>The frequencies reported by the OS are the ones the CPUs run at when they are sampled, not an average between
+ * samples, so short iterations get few samples and less accurate values.
+ */
+final class HardwareSampler {
+
+    private static final long SAMPLE_MILLIS = Long.getLong(
+            BenchmarkFramework.HARDWARE_SAMPLE_MILLIS_PROPERTY,
+            BenchmarkFramework.DEFAULT_HARDWARE_SAMPLE_MILLIS);
+
+    private static HardwareSampler instance;
+
+    private final CentralProcessor processor;
+    // all accumulated since the sampler started, guarded by this
+    private long samples;
+    private double frequencySum;
+    private long frequencySamples;
+    private final double[] coreLoadSums;
+    private long contextSwitches;
+
+    /**
+     * The values accumulated by the sampler up to a point in time.
+     */
+    record Snapshot(
+            long samples,
+            double frequencySum,
+            long frequencySamples,
+            double[] coreLoadSums,
+            long contextSwitches) {
+    }
+
+    /**
+     * The averages of the samples taken during an iteration.
+     *
+     * @param frequency       the average of the highest frequency among the CPUs in each sample (in Hz), or
+     *                        {@code NaN} if not available
+     * @param load            the average load of all CPUs, between {@code 0} and {@code 1}
+     * @param maxCoreLoad     the average load of the busiest CPU, between {@code 0} and {@code 1}
+     * @param contextSwitches the number of context switches in the whole system
+     */
+    record Sample(double frequency, double load, double maxCoreLoad, long contextSwitches) {
+
+        /**
+         * The sample, to be appended to the line reporting the iteration.
+         */
+        String summary() {
+            String frequencySummary = Double.isNaN(frequency) ? "" : ", %.2f GHz".formatted(frequency / 1E9);
+            return "%s, CPU load %.0f%% (max %.0f%%), %d cs".formatted(
+                    frequencySummary,
+                    load * 100.0d,
+                    maxCoreLoad * 100.0d,
+                    contextSwitches);
+        }
+    }
+
+    private HardwareSampler() {
+        this.processor = new SystemInfo().getHardware().getProcessor();
+        this.coreLoadSums = new double[processor.getLogicalProcessorCount()];
+        this.contextSwitches = processor.getContextSwitches();
+        Thread thread = new Thread(this::run, "hardware-sampler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The sampler of this JVM, started on the first call, or {@code null} if it's disabled.
+     */
+    static synchronized HardwareSampler get() {
+        if (!Boolean.getBoolean(BenchmarkFramework.HARDWARE_SAMPLER_PROPERTY)) {
+            return null;
+        }
+        if (instance == null) {
+            instance = new HardwareSampler();
+        }
+        return instance;
+    }
+
+    /**
+     * The values accumulated so far, to be compared with a later snapshot with {@link #between(Snapshot, Snapshot)}.
+     */
+    synchronized Snapshot snapshot() {
+        return new Snapshot(samples, frequencySum, frequencySamples, coreLoadSums.clone(), contextSwitches);
+    }
+
+    /**
+     * The averages of the samples taken between two snapshots, or {@code null} if no samples were taken.
+     */
+    static Sample between(Snapshot before, Snapshot after) {
+        long count = after.samples() - before.samples();
+        if (count == 0L) {
+            return null;
+        }
+        long frequencyCount = after.frequencySamples() - before.frequencySamples();
+        double loadSum = 0.0d;
+        double maxCoreLoad = 0.0d;
+        for (int i = 0; i < after.coreLoadSums().length; i++) {
+            double coreLoad = (after.coreLoadSums()[i] - before.coreLoadSums()[i]) / count;
+            loadSum += coreLoad;
+            maxCoreLoad = Math.max(maxCoreLoad, coreLoad);
+        }
+        return new Sample(
+                frequencyCount == 0L
+                        ? Double.NaN
+                        : (after.frequencySum() - before.frequencySum()) / frequencyCount,
+                loadSum / after.coreLoadSums().length,
+                maxCoreLoad,
+                after.contextSwitches() - before.contextSwitches());
+    }
+
+    private void run() {
+        long[][] ticks = processor.getProcessorCpuLoadTicks();
+        while (true) {
+            try {
+                Thread.sleep(SAMPLE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            double[] loads = processor.getProcessorCpuLoadBetweenTicks(ticks);
+            ticks = processor.getProcessorCpuLoadTicks();
+            long[] frequencies = processor.getCurrentFreq();
+            long currentContextSwitches = processor.getContextSwitches();
+            // the busiest CPUs usually run at the highest frequency (it's not supported by every OS)
+            long frequency = 0L;
+            for (long f : frequencies) {
+                frequency = Math.max(frequency, f);
+            }
+            synchronized (this) {
+                samples++;
+                if (frequency > 0L) {
+                    frequencySum += frequency;
+                    frequencySamples++;
+                }
+                for (int i = 0; i < Math.min(loads.length, coreLoadSums.length); i++) {
+                    coreLoadSums[i] += loads[i];
+                }
+                contextSwitches = currentContextSwitches;
+            }
+        }
+    }
+}
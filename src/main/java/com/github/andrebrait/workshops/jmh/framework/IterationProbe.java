@@ -0,0 +1,189 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Collects information about what happened in the JVM during a single measurement iteration.
+ *
+ * <p>A probe is started right before the measurement loop and stopped right after it, on the thread
+ * running the benchmark, and it can be reused for every iteration of a benchmark.
+ *
+ * <p>It collects the number of bytes allocated by the current thread (like JMH's {@code gc} profiler does with
+ * {@code gc.alloc.rate.norm}), which shows whether the JIT managed to remove allocations through escape analysis.
+ * This relies on {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}, which is supported
+ * by HotSpot but may not be available on other JVMs.
+ *
+ * <p>It also collects the time spent by the JIT compiler and the number of garbage collections (and their duration)
+ * in the whole JVM. An iteration in which either of them happened is <em>contaminated</em>: its score probably
+ * reflects a mix of different versions of the compiled code, or includes GC pauses. The compilation time is only
+ * tracked with millisecond precision, so very short compilations may go unnoticed.
+ *
+ * <p>If enabled, it also collects the frequency and load of the CPUs and the number of context switches sampled by
+ * the {@link HardwareSampler} during the iteration. A probe must be created before the first warmup iteration,
+ * as that starts the sampler.
+ */
+final class IterationProbe {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = allocationThreadMXBean();
+    private static final CompilationMXBean COMPILATION_MX_BEAN = compilationMXBean();
+    private static final List<GarbageCollectorMXBean> GARBAGE_COLLECTOR_MX_BEANS =
+            ManagementFactory.getGarbageCollectorMXBeans();
+
+    private long allocatedBytes;
+    private double bytesPerOp = Double.NaN;
+    private long compilationMillis;
+    private long gcCount;
+    private long gcMillis;
+    private final HardwareSampler sampler = HardwareSampler.get();
+    private HardwareSampler.Snapshot hardwareBefore;
+    private HardwareSampler.Sample hardware;
+
+    /**
+     * Called right before the measurement loop.
+     */
+    void start() {
+        hardwareBefore = sampler == null ? null : sampler.snapshot();
+        compilationMillis = totalCompilationMillis();
+        gcCount = totalGcCount();
+        gcMillis = totalGcMillis();
+        allocatedBytes = currentThreadAllocatedBytes();
+    }
+
+    /**
+     * Called right after the measurement loop.
+     *
+     * @param numOperations the number of operations executed in the loop
+     */
+    void stop(long numOperations) {
+        long allocatedAfter = currentThreadAllocatedBytes();
+        bytesPerOp = allocatedAfter < 0L ? Double.NaN : (allocatedAfter - allocatedBytes) / (double) numOperations;
+        compilationMillis = totalCompilationMillis() - compilationMillis;
+        gcCount = totalGcCount() - gcCount;
+        gcMillis = totalGcMillis() - gcMillis;
+        hardware = sampler == null ? null : HardwareSampler.between(hardwareBefore, sampler.snapshot());
+    }
+
+    /**
+     * The number of bytes allocated per operation in the last iteration, or {@code NaN} if not supported.
+     */
+    double bytesPerOp() {
+        return bytesPerOp;
+    }
+
+    /**
+     * The time spent by the JIT compiler during the last iteration, in milliseconds.
+     */
+    long compilationMillis() {
+        return compilationMillis;
+    }
+
+    /**
+     * The number of garbage collections during the last iteration.
+     */
+    long gcCount() {
+        return gcCount;
+    }
+
+    /**
+     * The hardware samples of the last iteration, or {@code null} if the sampler is disabled or no samples were
+     * taken during the iteration.
+     */
+    HardwareSampler.Sample hardware() {
+        return hardware;
+    }
+
+    /**
+     * Whether neither the JIT compiler nor the garbage collector ran during the last iteration.
+     */
+    boolean isClean() {
+        return compilationMillis == 0L && gcCount == 0L;
+    }
+
+    /**
+     * The information collected in the last iteration, to be appended to the line reporting it.
+     */
+    String summary() {
+        return formatBytesPerOp(bytesPerOp) + contamination() + hardwareSummary();
+    }
+
+    /**
+     * The hardware samples of the last iteration, if any, to be appended to the line reporting it.
+     */
+    String hardwareSummary() {
+        return hardware == null ? "" : hardware.summary();
+    }
+
+    /**
+     * The JIT compilation and garbage collection activity in the last iteration, to be appended to the line
+     * reporting it.
+     */
+    String contamination() {
+        StringBuilder sb = new StringBuilder();
+        if (compilationMillis > 0L) {
+            sb.append(", JIT %d ms".formatted(compilationMillis));
+        }
+        if (gcCount > 0L) {
+            sb.append(", GC %dx %d ms".formatted(gcCount, gcMillis));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats a number of bytes per operation to be appended to a line of results.
+     *
+     * @return the formatted value or an empty string if the value is {@code NaN}
+     */
+    static String formatBytesPerOp(double bytesPerOp) {
+        return Double.isNaN(bytesPerOp) ? "" : ", %.2f B/op".formatted(bytesPerOp);
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return THREAD_MX_BEAN == null ? -1L : THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * The total time spent by the JIT compiler in this JVM, in milliseconds, or {@code 0} if not supported.
+     */
+    static long totalCompilationMillis() {
+        return COMPILATION_MX_BEAN == null ? 0L : COMPILATION_MX_BEAN.getTotalCompilationTime();
+    }
+
+    /**
+     * The total number of garbage collections in this JVM.
+     */
+    static long totalGcCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean bean : GARBAGE_COLLECTOR_MX_BEANS) {
+            count += Math.max(bean.getCollectionCount(), 0L);
+        }
+        return count;
+    }
+
+    private static long totalGcMillis() {
+        long millis = 0L;
+        for (GarbageCollectorMXBean bean : GARBAGE_COLLECTOR_MX_BEANS) {
+            millis += Math.max(bean.getCollectionTime(), 0L);
+        }
+        return millis;
+    }
+
+    private static CompilationMXBean compilationMXBean() {
+        CompilationMXBean bean = ManagementFactory.getCompilationMXBean();
+        return bean != null && bean.isCompilationTimeMonitoringSupported() ? bean : null;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationThreadMXBean() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()) {
+            if (!bean.isThreadAllocatedMemoryEnabled()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return bean;
+        }
+        return null;
+    }
+}
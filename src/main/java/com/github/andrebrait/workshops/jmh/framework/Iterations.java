@@ -0,0 +1,263 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.Arrays;
+
+/**
+ * Decides which iterations of a benchmark are warmup and which are measured, and keeps the score of the
+ * measured ones.
+ *
+ * <p>By default, the first {@code warmup} iterations are warmup. If {@value BenchmarkFramework#CLEAN_WARMUP_PROPERTY}
+ * is set, the warmup is extended until that many consecutive warmup iterations ran without any JIT compilation
+ * or garbage collection (see {@link IterationProbe#isClean()}), up to {@value BenchmarkFramework#MAX_WARMUP_PROPERTY}
+ * warmup iterations in total.
+ *
+ * <p>If {@value BenchmarkFramework#STEADY_STATE_PROPERTY} is set, the numbers of iterations are not fixed anymore:
+ * <ul>
+ *     <li>the warmup ends as soon as the coefficient of variation (standard deviation / mean) of the scores
+ *     of the last {@value #STEADY_STATE_WINDOW} warmup iterations is below
+ *     {@value BenchmarkFramework#STEADY_STATE_CV_PROPERTY}, up to {@value BenchmarkFramework#MAX_WARMUP_PROPERTY}
+ *     warmup iterations in total;</li>
+ *     <li>the measurement ends as soon as the half-width of the 95% confidence interval of the score is below
+ *     {@value BenchmarkFramework#TARGET_ERROR_PROPERTY} (relative to the score), after at least
+ *     {@value #MIN_MEASURED} and up to {@value BenchmarkFramework#MAX_REPEAT_PROPERTY} measured iterations.</li>
+ * </ul>
+ * Stable benchmarks then finish in a few iterations, while noisy ones get more samples. A benchmark which only
+ * looks stable for a few iterations (e.g. right before a late JIT compilation) can still fool it, so it's a good
+ * idea to combine it with {@value BenchmarkFramework#CLEAN_WARMUP_PROPERTY}.
+ *
+ * <p>If {@value BenchmarkFramework#JFR_PROPERTY} is set, a {@link JfrProfile} records the measured iterations: it
+ * starts when {@link #hasNext()} is about to return the first measured iteration, and its summary is printed when
+ * {@link #hasNext()} returns {@code false}.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * Iterations iterations = new Iterations(warmup, repeat);
+ * while (iterations.hasNext()) {
+ *     boolean benchRun = !iterations.isWarmup();
+ *     // run and report the iteration
+ *     iterations.completed(score, probe);
+ * }
+ * }</pre>
+ */
+final class Iterations {
+
+    private static final int CLEAN_WARMUP = Integer.getInteger(BenchmarkFramework.CLEAN_WARMUP_PROPERTY, 0);
+    private static final int MAX_WARMUP = Integer.getInteger(
+            BenchmarkFramework.MAX_WARMUP_PROPERTY,
+            BenchmarkFramework.DEFAULT_MAX_WARMUP);
+    private static final boolean STEADY_STATE = Boolean.getBoolean(BenchmarkFramework.STEADY_STATE_PROPERTY);
+    private static final double STEADY_STATE_CV = Double.parseDouble(System.getProperty(
+            BenchmarkFramework.STEADY_STATE_CV_PROPERTY,
+            Double.toString(BenchmarkFramework.DEFAULT_STEADY_STATE_CV)));
+    private static final double TARGET_ERROR = Double.parseDouble(System.getProperty(
+            BenchmarkFramework.TARGET_ERROR_PROPERTY,
+            Double.toString(BenchmarkFramework.DEFAULT_TARGET_ERROR)));
+    private static final int MAX_REPEAT = Integer.getInteger(
+            BenchmarkFramework.MAX_REPEAT_PROPERTY,
+            BenchmarkFramework.DEFAULT_MAX_REPEAT);
+    private static final boolean JFR = Boolean.getBoolean(BenchmarkFramework.JFR_PROPERTY);
+    private static final int STEADY_STATE_WINDOW = 3;
+    private static final int MIN_MEASURED = 3;
+    private static final double CONFIDENCE = 0.95d;
+    private static final double FREQUENCY_TOLERANCE = 0.05d;
+    private static final double CONTEXT_SWITCHES_TOLERANCE = 2.0d;
+    // a few context switches more than the median are normal, even if the median is 0
+    private static final double MIN_EXTRA_CONTEXT_SWITCHES = 10.0d;
+
+    private final int warmup;
+    private final int repeat;
+    private final double[] window = new double[STEADY_STATE_WINDOW];
+    private double[] samples;
+    // the hardware samples of each measured iteration, null if not sampled
+    private HardwareSampler.Sample[] hardware;
+    private int warmupDone;
+    private int consecutiveClean;
+    private int measured;
+    private int contaminated;
+    // the recording of the measured iterations, null if not recording
+    private JfrProfile profile;
+
+    Iterations(int warmup, int repeat) {
+        if (repeat <= 0) {
+            throw new IllegalArgumentException("Invalid repeat: %d. Must be at least 1".formatted(repeat));
+        }
+        this.warmup = warmup;
+        this.repeat = repeat;
+        this.samples = new double[repeat];
+        this.hardware = new HardwareSampler.Sample[repeat];
+    }
+
+    /**
+     * Whether there's another iteration to run.
+     */
+    boolean hasNext() {
+        boolean hasNext;
+        if (!STEADY_STATE) {
+            hasNext = measured < repeat;
+        } else {
+            hasNext = measured < MIN_MEASURED || (measured < Math.max(repeat, MAX_REPEAT) && !isPrecise());
+        }
+        if (JFR) {
+            if (hasNext && profile == null && !isWarmup()) {
+                profile = JfrProfile.start();
+            } else if (!hasNext && profile != null) {
+                System.out.print(profile.stop());
+                profile = null;
+            }
+        }
+        return hasNext;
+    }
+
+    /**
+     * Whether the next (or current) iteration is a warmup iteration.
+     */
+    boolean isWarmup() {
+        if (measured > 0) {
+            return false;
+        }
+        boolean clean = CLEAN_WARMUP == 0 || consecutiveClean >= CLEAN_WARMUP;
+        if (STEADY_STATE) {
+            return (!isSteady() || !clean) && warmupDone < Math.max(warmup, MAX_WARMUP);
+        }
+        if (warmupDone < warmup) {
+            return true;
+        }
+        return !clean && warmupDone < Math.max(warmup, MAX_WARMUP);
+    }
+
+    /**
+     * Marks the current iteration as completed.
+     *
+     * @param score the score of the iteration
+     * @param probe the probe which measured the iteration
+     */
+    void completed(double score, IterationProbe probe) {
+        if (isWarmup()) {
+            window[warmupDone % STEADY_STATE_WINDOW] = score;
+            warmupDone++;
+            consecutiveClean = probe.isClean() ? consecutiveClean + 1 : 0;
+        } else {
+            if (measured == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+                hardware = Arrays.copyOf(hardware, hardware.length * 2);
+            }
+            hardware[measured] = probe.hardware();
+            samples[measured++] = score;
+            if (!probe.isClean()) {
+                contaminated++;
+            }
+        }
+    }
+
+    /**
+     * The number of measured iterations so far.
+     */
+    int measured() {
+        return measured;
+    }
+
+    /**
+     * The scores of the measured iterations so far.
+     */
+    double[] samples() {
+        return Arrays.copyOf(samples, measured);
+    }
+
+    /**
+     * Prints a warning if any of the measured iterations was contaminated by JIT compilation or garbage collection.
+     */
+    void printWarnings() {
+        if (contaminated > 0) {
+            System.out.printf(
+                    "Warning: %d of %d measured iterations ran while the JIT compiler or the GC were active%n",
+                    contaminated,
+                    measured);
+        }
+        if (CLEAN_WARMUP > 0 && consecutiveClean < CLEAN_WARMUP) {
+            System.out.printf(
+                    "Warning: no %d consecutive clean iterations after %d warmup iterations%n",
+                    CLEAN_WARMUP,
+                    warmupDone);
+        }
+        if (STEADY_STATE && !isSteady()) {
+            System.out.printf(
+                    "Warning: no steady state (CV <= %.2f%%) after %d warmup iterations%n",
+                    STEADY_STATE_CV * 100.0d,
+                    warmupDone);
+        }
+        if (STEADY_STATE && !isPrecise()) {
+            System.out.printf(
+                    "Warning: error of %.2f%% after %d measured iterations (target: %.2f%%)%n",
+                    relativeError() * 100.0d,
+                    measured,
+                    TARGET_ERROR * 100.0d);
+        }
+        printHardwareWarnings();
+    }
+
+    /**
+     * Points out the measured iterations which ran at a different CPU frequency or with many more context switches
+     * than most of them, as their scores are probably outliers caused by the environment.
+     */
+    private void printHardwareWarnings() {
+        double[] frequencies = new double[measured];
+        double[] contextSwitches = new double[measured];
+        for (int i = 0; i < measured; i++) {
+            if (hardware[i] == null || Double.isNaN(hardware[i].frequency())) {
+                return;
+            }
+            frequencies[i] = hardware[i].frequency();
+            contextSwitches[i] = hardware[i].contextSwitches();
+        }
+        double medianFrequency = Statistics.median(frequencies);
+        double medianContextSwitches = Statistics.median(contextSwitches);
+        double maxContextSwitches = Math.max(
+                medianContextSwitches * CONTEXT_SWITCHES_TOLERANCE,
+                medianContextSwitches + MIN_EXTRA_CONTEXT_SWITCHES);
+        for (int i = 0; i < measured; i++) {
+            if (Math.abs(frequencies[i] - medianFrequency) > medianFrequency * FREQUENCY_TOLERANCE) {
+                System.out.printf(
+                        "Warning: measured iteration %d ran at %.2f GHz vs %.2f GHz (median)%n",
+                        i + 1,
+                        frequencies[i] / 1E9,
+                        medianFrequency / 1E9);
+            }
+            if (contextSwitches[i] > maxContextSwitches) {
+                System.out.printf(
+                        "Warning: measured iteration %d had %.0f context switches vs %.0f (median)%n",
+                        i + 1,
+                        contextSwitches[i],
+                        medianContextSwitches);
+            }
+        }
+    }
+
+    /**
+     * Whether the scores of the last warmup iterations are stable.
+     */
+    private boolean isSteady() {
+        if (warmupDone < STEADY_STATE_WINDOW) {
+            return false;
+        }
+        double mean = Statistics.mean(window, STEADY_STATE_WINDOW);
+        return Statistics.standardDeviation(window, STEADY_STATE_WINDOW) <= STEADY_STATE_CV * Math.abs(mean);
+    }
+
+    /**
+     * Whether the confidence interval of the score is narrow enough.
+     */
+    private boolean isPrecise() {
+        return relativeError() <= TARGET_ERROR;
+    }
+
+    /**
+     * The half-width of the confidence interval of the score, relative to the score.
+     */
+    private double relativeError() {
+        if (measured < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double halfWidth = Statistics.confidenceHalfWidth(samples, measured, CONFIDENCE);
+        return halfWidth == 0.0d ? 0.0d : halfWidth / Math.abs(Statistics.mean(samples, measured));
+    }
+}
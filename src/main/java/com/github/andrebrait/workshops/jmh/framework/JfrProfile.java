@@ -0,0 +1,155 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Profiles a section of a benchmark (usually its measurement phase) with a JDK Flight Recorder recording, and
+ * summarizes it: the methods most often found running by the execution sampler, the allocation sites of most bytes
+ * and the deoptimizations.
+ *
+ * <p>JFR samples the threads without waiting for a safepoint and with little overhead, and it works on any OS and
+ * without root, unlike {@code perfasm} and {@code dtraceasm}. It only sees Java frames, though, so it can't show
+ * what happens inside a method, or in native code. The allocations are sampled too, so the allocation sites are
+ * weighted estimates.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * JfrProfile profile = JfrProfile.start();
+ * // run the code to profile
+ * System.out.print(profile.stop());
+ * }</pre>
+ *
+ * <p>The naive framework does this for the measured iterations of each benchmark when
+ * {@value BenchmarkFramework#JFR_PROPERTY} is set, and {@code JfrSummaryProfiler} does it for JMH benchmarks.
+ */
+public final class JfrProfile {
+
+    private static final int TOP = 10;
+    private static final Duration SAMPLING_PERIOD = Duration.ofMillis(10L);
+
+    private final Recording recording;
+
+    private JfrProfile(Recording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Starts a recording of execution samples, allocation samples and deoptimizations.
+     */
+    public static JfrProfile start() {
+        Recording recording = new Recording();
+        recording.enable("jdk.ExecutionSample").withPeriod(SAMPLING_PERIOD);
+        recording.enable("jdk.ObjectAllocationSample").with("throttle", "1000/s");
+        recording.enable("jdk.Deoptimization");
+        recording.setToDisk(true);
+        recording.start();
+        return new JfrProfile(recording);
+    }
+
+    /**
+     * Stops the recording and summarizes it.
+     *
+     * @return the summary, in multiple lines
+     */
+    public String stop() {
+        recording.stop();
+        Path file = null;
+        try {
+            file = Files.createTempFile("benchmark", ".jfr");
+            recording.dump(file);
+            return summarize(RecordingFile.readAllEvents(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the JFR recording", e);
+        } finally {
+            recording.close();
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // it's only a temporary file
+                }
+            }
+        }
+    }
+
+    private static String summarize(List<RecordedEvent> events) {
+        Map<String, Long> hotMethods = new HashMap<>();
+        Map<String, Long> allocationSites = new HashMap<>();
+        Map<String, Long> deoptimizations = new HashMap<>();
+        long executionSamples = 0L;
+        long allocatedBytes = 0L;
+        for (RecordedEvent event : events) {
+            switch (event.getEventType().getName()) {
+                case "jdk.ExecutionSample" -> {
+                    executionSamples++;
+                    hotMethods.merge(topFrame(event.getStackTrace()), 1L, Long::sum);
+                }
+                case "jdk.ObjectAllocationSample" -> {
+                    long weight = event.getLong("weight");
+                    allocatedBytes += weight;
+                    String site = "%s in %s".formatted(
+                            event.getClass("objectClass").getName(),
+                            topFrame(event.getStackTrace()));
+                    allocationSites.merge(site, weight, Long::sum);
+                }
+                case "jdk.Deoptimization" -> {
+                    String deoptimization = "%s (line %d, reason: %s, action: %s)".formatted(
+                            method(event.getValue("method")),
+                            event.getInt("lineNumber"),
+                            event.getString("reason"),
+                            event.getString("action"));
+                    deoptimizations.merge(deoptimization, 1L, Long::sum);
+                }
+                default -> {
+                    // not summarized
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("JFR profile:%n".formatted());
+        sb.append("  Hot methods (%d execution samples):%n".formatted(executionSamples));
+        for (Map.Entry<String, Long> entry : top(hotMethods)) {
+            sb.append("    %6.2f%%  %s%n".formatted(entry.getValue() * 100.0d / executionSamples, entry.getKey()));
+        }
+        sb.append("  Allocation sites (~%d MiB sampled):%n".formatted(allocatedBytes / (1024L * 1024L)));
+        for (Map.Entry<String, Long> entry : top(allocationSites)) {
+            sb.append("    %6.2f%%  %s%n".formatted(entry.getValue() * 100.0d / allocatedBytes, entry.getKey()));
+        }
+        sb.append("  Deoptimizations (%d):%n".formatted(
+                deoptimizations.values().stream().mapToLong(Long::longValue).sum()));
+        for (Map.Entry<String, Long> entry : top(deoptimizations)) {
+            sb.append("    %5dx  %s%n".formatted(entry.getValue(), entry.getKey()));
+        }
+        return sb.toString();
+    }
+
+    private static List<Map.Entry<String, Long>> top(Map<String, Long> counts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries.subList(0, Math.min(TOP, entries.size()));
+    }
+
+    private static String topFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "(unknown)";
+        }
+        RecordedFrame frame = stackTrace.getFrames().get(0);
+        return "%s (%s)".formatted(method(frame.getMethod()), frame.getType());
+    }
+
+    private static String method(RecordedMethod method) {
+        return method == null ? "(unknown)" : method.getType().getName() + '.' + method.getName();
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size, log-linear histogram of latencies (in nanoseconds).
+ *
+ * <p>Values below {@code 64} are stored exactly. Above that, every power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, which keeps the relative error of any reported value
+ * under ~3% while covering the whole range of a {@code long} with less than 2,000 buckets.
+ *
+ * <p>All the memory is allocated upfront, so {@link #record(long)} never allocates and can be called
+ * from inside a measurement loop. This class is not thread-safe.
+ *
+ * <p>Reference: <a href="https://github.com/HdrHistogram/HdrHistogram">HdrHistogram</a>, which uses the same idea.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+    private static final int BUCKETS = indexOf(Long.MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a single value.
+     *
+     * @param value the value (in nanoseconds), negative values are recorded as zero
+     */
+    public void record(long value) {
+        record(value, 1L);
+    }
+
+    /**
+     * Records the same value a number of times, e.g. the average latency of a batch of operations.
+     *
+     * @param value the value (in nanoseconds), negative values are recorded as zero
+     * @param count how many times the value was observed
+     */
+    public void record(long value, long count) {
+        long v = Math.max(value, 0L);
+        counts[indexOf(v)] += count;
+        totalCount += count;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    /**
+     * Adds all the values recorded in another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Clears all the recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0L);
+        totalCount = 0L;
+        min = Long.MAX_VALUE;
+        max = 0L;
+    }
+
+    /**
+     * The number of recorded values.
+     */
+    public long count() {
+        return totalCount;
+    }
+
+    /**
+     * The smallest recorded value, or zero if nothing was recorded.
+     */
+    public long min() {
+        return totalCount == 0L ? 0L : min;
+    }
+
+    /**
+     * The largest recorded value, or zero if nothing was recorded.
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Calculates the value at a given percentile.
+     *
+     * <p>The returned value is the highest value equivalent to the bucket the percentile falls into,
+     * capped at the maximum recorded value.
+     *
+     * @param percentile the percentile, between {@code 0.0} and {@code 100.0}
+     * @return the value at the given percentile, or zero if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0.0d || percentile > 100.0d) {
+            throw new IllegalArgumentException("Invalid percentile: %f. Must be between 0 and 100".formatted(
+                    percentile));
+        }
+        if (totalCount == 0L) {
+            return 0L;
+        }
+        long target = Math.max(1L, (long) Math.ceil((percentile / 100.0d) * totalCount));
+        long cumulative = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Formats the usual percentiles of this histogram in a single line.
+     */
+    public String summary() {
+        return "p50 = %d ns, p90 = %d ns, p99 = %d ns, p99.9 = %d ns, max = %d ns".formatted(
+                percentile(50.0d),
+                percentile(90.0d),
+                percentile(99.0d),
+                percentile(99.9d),
+                max());
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKETS) + (int) (value >>> shift);
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index / SUB_BUCKETS) - 1;
+        long mantissa = (index % SUB_BUCKETS) + SUB_BUCKETS;
+        // for the last bucket, this wraps around to exactly Long.MAX_VALUE
+        return ((mantissa + 1L) << shift) - 1L;
+    }
+}
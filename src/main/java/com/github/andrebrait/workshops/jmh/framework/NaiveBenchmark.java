@@ -0,0 +1,54 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as a benchmark, for which a dedicated {@link BenchLoop} is generated at compile time.
+ *
+ * <p>When every benchmark is passed to {@link BenchmarkFramework} as a lambda, they are all called from the same
+ * call site, which becomes megamorphic after the second benchmark, so the JIT compiler stops inlining the benchmarked
+ * code and the results depend on which benchmarks ran before. The generated loops call the annotated method directly,
+ * like the stubs generated by JMH for {@code @Benchmark} methods.
+ *
+ * <p>The annotated method must be {@code static}, not {@code private}, take no arguments, and be declared in a
+ * top-level class. Its return value, if any, is consumed by a {@link Blackhole}.
+ *
+ * <p>For each class with annotated methods (e.g. {@code F_PointGeneratedBenchmark}), a class named
+ * {@code F_PointGeneratedBenchmark_NaiveBenchmarks} is generated in the same package, with a {@code main} method
+ * which runs all of them with {@link BenchmarkFramework#bench(String, long, int, int, int, BenchLoop)}, in the order
+ * they were declared. Each benchmark also gets a class named after the method, e.g.
+ * {@code F_PointGeneratedBenchmark_fast_NaiveLoop}.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface NaiveBenchmark {
+
+    /**
+     * The name of the benchmark (for display purposes), or the name of the method if empty.
+     */
+    String name() default "";
+
+    /**
+     * The duration of the benchmark (in milliseconds).
+     */
+    long runMillis() default BenchmarkFramework.RUN_MILLIS;
+
+    /**
+     * The number of times to execute the benchmarked code per time measurement, or
+     * {@link BenchmarkFramework#AUTO_LOOP}.
+     */
+    int loop() default BenchmarkFramework.LOOP;
+
+    /**
+     * How many runs to execute before taking measurements.
+     */
+    int warmup() default BenchmarkFramework.WARMUP;
+
+    /**
+     * How many times to repeat the benchmark in total (after the warmup).
+     */
+    int repeat() default BenchmarkFramework.REPEAT;
+}
@@ -0,0 +1,163 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.*;
+
+/**
+ * Runs a benchmark once for every combination of the values of a set of parameters, like JMH does with
+ * {@code @Param}.
+ *
+ * <p>The benchmark receives the values of the current combination and is expected to call one of the methods in
+ * {@link BenchmarkFramework}, building whatever it needs from those values (e.g. an {@code argsSupplier} creating
+ * arrays of the given size). The parameters are added to the results of the benchmark, and a table with the results
+ * of all combinations is printed at the end, with one column per parameter.
+ *
+ * <p>Usage:
+ * <pre>{@code
+ * ParameterMatrix.run(
+ *         List.of(Param.of("type", "fast", "fixed"), Param.of("size", "1000", "1000000")),
+ *         params -> BenchmarkFramework.benchDouble(
+ *                 "total_distance",
+ *                 RUN_MILLIS,
+ *                 1,
+ *                 WARMUP,
+ *                 REPEAT,
+ *                 () -> points(params.get("type"), params.getInt("size")),
+ *                 blackhole::consume,
+ *                 Points::totalDistance));
+ * }</pre>
+ *
+ * <p>The combinations are run in order, with the values of the last parameter changing the fastest.
+ * When running with {@link ForkedRunner}, all combinations of each benchmark run in the same JVM, so it's still
+ * a good idea to run the combinations which matter the most in their own JVM.
+ */
+public final class ParameterMatrix {
+
+    // the parameters of the combination being run, added to the results reported while it runs
+    private static Map<String, String> current = Map.of();
+    private static List<BenchmarkResult> results;
+
+    /**
+     * A parameter and the values to run the benchmark with.
+     *
+     * @param name   the name of the parameter
+     * @param values the values of the parameter, in order
+     */
+    public record Param(String name, List<String> values) {
+
+        public Param {
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("Parameter %s must have at least one value".formatted(name));
+            }
+            values = List.copyOf(values);
+        }
+
+        public static Param of(String name, String... values) {
+            return new Param(name, List.of(values));
+        }
+    }
+
+    /**
+     * The values of each parameter in a single combination.
+     *
+     * @param values the value of each parameter, keyed by the name of the parameter, in order
+     */
+    public record Params(Map<String, String> values) {
+
+        public String get(String name) {
+            String value = values.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Unknown parameter: %s".formatted(name));
+            }
+            return value;
+        }
+
+        public int getInt(String name) {
+            return Integer.parseInt(get(name));
+        }
+
+        public long getLong(String name) {
+            return Long.parseLong(get(name));
+        }
+
+        public double getDouble(String name) {
+            return Double.parseDouble(get(name));
+        }
+    }
+
+    /**
+     * Runs a benchmark for every combination of the values of the given parameters and prints a table with the
+     * results.
+     *
+     * @param space     the parameters and their values
+     * @param benchmark the code which runs the benchmark for a given combination of parameters
+     * @return the results of all combinations
+     */
+    public static List<BenchmarkResult> run(List<Param> space, BenchConsumer<Params> benchmark) {
+        if (results != null) {
+            throw new IllegalStateException("A parameter matrix is already running");
+        }
+        List<BenchmarkResult> collected = new ArrayList<>();
+        results = collected;
+        try {
+            for (Params params : combinations(space)) {
+                current = params.values();
+                benchmark.accept(params);
+            }
+        } finally {
+            current = Map.of();
+            results = null;
+        }
+        if (!collected.isEmpty()) {
+            ResultTable.print(collected);
+        }
+        return collected;
+    }
+
+    /**
+     * Adds the parameters of the combination being run, if any, to a result.
+     */
+    static BenchmarkResult withCurrentParams(BenchmarkResult result) {
+        if (results == null) {
+            return result;
+        }
+        Map<String, String> params = new LinkedHashMap<>(current);
+        params.putAll(result.params());
+        BenchmarkResult withParams = new BenchmarkResult(
+                result.name(),
+                params,
+                result.mode(),
+                result.score(),
+                result.unit(),
+                result.samples(),
+                result.secondary());
+        results.add(withParams);
+        return withParams;
+    }
+
+    private static List<Params> combinations(List<Param> space) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (Param param : space) {
+            List<Map<String, String>> extended = new ArrayList<>();
+            for (Map<String, String> combination : combinations) {
+                for (String value : param.values()) {
+                    Map<String, String> next = new LinkedHashMap<>(combination);
+                    if (next.put(param.name(), value) != null) {
+                        throw new IllegalArgumentException("Duplicate parameter: %s".formatted(param.name()));
+                    }
+                    extended.add(next);
+                }
+            }
+            combinations = extended;
+        }
+        List<Params> params = new ArrayList<>();
+        for (Map<String, String> combination : combinations) {
+            params.add(new Params(Collections.unmodifiableMap(combination)));
+        }
+        return params;
+    }
+
+    private ParameterMatrix() {
+        // util class
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the results of benchmarks keyed by a fingerprint of everything that could change them, so a benchmark
+ * which did not change since its last run doesn't have to run again.
+ *
+ * <p>The fingerprint is a hash of:
+ * <ul>
+ *     <li>the bytecode of the benchmark class, of any other class named in its arguments (e.g. the benchmark run by
+ *     {@link ForkedRunner}) and of every class of this project they reference, directly or through other classes
+ *     (including the framework itself and the domain classes)</li>
+ *     <li>the name, vendor and version of the JVM, and the OS architecture</li>
+ *     <li>the settings of the run: the JVM arguments, the program arguments, the number of forks, etc.</li>
+ * </ul>
+ *
+ * <p>The references are found in the constant pool of each class file, so classes which are only loaded by name
+ * through reflection are not included. Anything else which may change the results (e.g. the hardware, the load of
+ * the machine, or the libraries) is not part of the fingerprint either, so clear the cache when those change.
+ *
+ * <p>The cache is disabled unless the {@value #CACHE_PROPERTY} system property is set to the directory where the
+ * results are stored. It's used by {@link ForkedRunner} (for the results of each benchmark) and by
+ * {@link SuiteRunner} (for the output of each job, e.g. a JMH benchmark class).
+ */
+public final class ResultCache {
+
+    public static final String CACHE_PROPERTY = "bench.cache";
+
+    private static final String PROJECT_PACKAGE = "com/github/andrebrait/workshops/jmh/";
+    private static final Pattern CLASS_NAME = Pattern.compile(Pattern.quote(PROJECT_PACKAGE) + "[\\w$/]+");
+
+    /**
+     * Whether the {@value #CACHE_PROPERTY} system property is set.
+     */
+    static boolean isEnabled() {
+        return System.getProperty(CACHE_PROPERTY) != null;
+    }
+
+    /**
+     * The file in the cache for the given fingerprint and extension, which may not exist yet.
+     */
+    static Path file(String fingerprint, String extension) {
+        Path directory = Path.of(System.getProperty(CACHE_PROPERTY));
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create %s".formatted(directory), e);
+        }
+        return directory.resolve(fingerprint + extension);
+    }
+
+    /**
+     * The results stored for the given fingerprint, or {@code null} if there are none.
+     */
+    static List<BenchmarkResult> results(String fingerprint) {
+        Path file = file(fingerprint, ".json");
+        return Files.isRegularFile(file) ? ResultExport.readJson(file) : null;
+    }
+
+    /**
+     * Stores the results for the given fingerprint, replacing any previous ones.
+     */
+    static void store(String fingerprint, List<BenchmarkResult> results) {
+        ResultExport.writeJson(file(fingerprint, ".json"), results);
+    }
+
+    /**
+     * Calculates the fingerprint of a benchmark class.
+     *
+     * @param mainClass the fully qualified name of the benchmark class
+     * @param settings  the settings of the run which may change the results
+     * @return the fingerprint, as a hexadecimal string
+     */
+    static String fingerprint(String mainClass, List<String> settings) {
+        return fingerprint(mainClass, List.of(), settings);
+    }
+
+    /**
+     * Calculates the fingerprint of a benchmark class run with the given arguments, including the bytecode of the
+     * arguments which are names of classes, e.g. for a launcher (such as {@link ForkedRunner}) which runs the
+     * benchmark class named in its arguments.
+     *
+     * @param mainClass the fully qualified name of the main class
+     * @param args      the arguments of the main class, which are also part of the settings
+     * @param settings  the other settings of the run which may change the results
+     * @return the fingerprint, as a hexadecimal string
+     */
+    static String fingerprint(String mainClass, List<String> args, List<String> settings) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (String setting : List.of(
+                System.getProperty("java.vm.name"),
+                System.getProperty("java.vm.vendor"),
+                System.getProperty("java.vm.version"),
+                System.getProperty("os.arch"))) {
+            update(digest, setting);
+        }
+        update(digest, String.valueOf(settings.size()));
+        for (String setting : settings) {
+            update(digest, setting);
+        }
+        update(digest, String.valueOf(args.size()));
+        for (String arg : args) {
+            update(digest, arg);
+        }
+        if (bytecode(mainClass.replace('.', '/')) == null) {
+            throw new IllegalArgumentException("Class not found: %s".formatted(mainClass));
+        }
+        // sorted, so the fingerprint doesn't depend on the order the references were found in
+        Map<String, byte[]> classes = new TreeMap<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(mainClass.replace('.', '/')));
+        for (String arg : args) {
+            // the arguments which aren't classes are skipped below, like any other name that isn't found
+            pending.add(arg.replace('.', '/'));
+        }
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (classes.containsKey(name)) {
+                continue;
+            }
+            byte[] bytecode = bytecode(name);
+            if (bytecode == null) {
+                // e.g. a package name in a string, or a class generated at runtime
+                continue;
+            }
+            classes.put(name, bytecode);
+            pending.addAll(referencedClasses(bytecode));
+        }
+        classes.forEach((name, bytecode) -> {
+            update(digest, name);
+            digest.update(bytecode);
+        });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static byte[] bytecode(String internalName) {
+        try (InputStream in = ClassLoader.getSystemResourceAsStream(internalName + ".class")) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read %s".formatted(internalName), e);
+        }
+    }
+
+    /**
+     * Finds the names of the classes of this project referenced in the constant pool of a class file, either as
+     * classes or in the descriptors and signatures of fields and methods.
+     */
+    private static Set<String> referencedClasses(byte[] bytecode) {
+        Set<String> names = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytecode))) {
+            in.readInt(); // magic
+            in.readUnsignedShort(); // minor version
+            in.readUnsignedShort(); // major version
+            int count = in.readUnsignedShort();
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1 -> { // Utf8
+                        Matcher matcher = CLASS_NAME.matcher(in.readUTF());
+                        while (matcher.find()) {
+                            names.add(matcher.group());
+                        }
+                    }
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipNBytes(4);
+                    case 5, 6 -> {
+                        // Long and Double take two entries
+                        in.skipNBytes(8);
+                        i++;
+                    }
+                    case 7, 8, 16, 19, 20 -> in.skipNBytes(2);
+                    case 15 -> in.skipNBytes(3);
+                    default -> throw new IllegalArgumentException("Invalid constant pool tag: %d".formatted(tag));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid class file", e);
+        }
+        return names;
+    }
+
+    private ResultCache() {
+        // this is a utility class
+    }
+}
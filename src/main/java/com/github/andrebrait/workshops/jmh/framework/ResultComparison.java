@@ -0,0 +1,136 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import com.github.andrebrait.workshops.jmh.utils.SystemInfoUtils;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the results of a run with the results of a baseline run, both written in JSON by {@link ResultExport},
+ * and exits with a non-zero code if any benchmark regressed.
+ *
+ * <p>A benchmark regressed if its score got worse (lower for throughput, higher for everything else) by more than
+ * a threshold and the difference is statistically significant according to Welch's t-test on the score of each
+ * measured iteration. Benchmarks with less than two measured iterations can't be tested, so they never count as
+ * regressions (more forks or iterations help here). Regressions measured in a noisy environment (see
+ * {@link SystemInfoUtils#checkEnvironment()}) are flagged as such, as they may be caused by the environment instead.
+ *
+ * <p>Usage: {@code ResultComparison <baseline.json> <current.json>}, with the following (optional) system properties:
+ * <ul>
+ *     <li>{@value #THRESHOLD_PROPERTY}: the minimum relative change to be reported (default:
+ *     {@value #DEFAULT_THRESHOLD})</li>
+ *     <li>{@value #ALPHA_PROPERTY}: the significance level of the test (default: {@value #DEFAULT_ALPHA})</li>
+ * </ul>
+ */
+public final class ResultComparison {
+
+    public static final String THRESHOLD_PROPERTY = "bench.threshold";
+    public static final double DEFAULT_THRESHOLD = 0.05d;
+    public static final String ALPHA_PROPERTY = "bench.alpha";
+    public static final double DEFAULT_ALPHA = 0.05d;
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: ResultComparison <baseline.json> <current.json>");
+        }
+        double threshold = Double.parseDouble(
+                System.getProperty(THRESHOLD_PROPERTY, Double.toString(DEFAULT_THRESHOLD)));
+        double alpha = Double.parseDouble(System.getProperty(ALPHA_PROPERTY, Double.toString(DEFAULT_ALPHA)));
+        int regressions = compare(
+                ResultExport.readJson(Path.of(args[0])),
+                ResultExport.readJson(Path.of(args[1])),
+                threshold,
+                alpha);
+        if (regressions > 0) {
+            System.out.printf("%d regression(s) found%n", regressions);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares the results of a run with the results of a baseline run and prints the comparison.
+     *
+     * @param baseline  the results of the baseline run
+     * @param current   the results of the run
+     * @param threshold the minimum relative change to be reported as a regression or an improvement
+     * @param alpha     the significance level of the test
+     * @return the number of benchmarks which regressed
+     */
+    public static int compare(
+            List<BenchmarkResult> baseline,
+            List<BenchmarkResult> current,
+            double threshold,
+            double alpha) {
+        Map<String, BenchmarkResult> baselineByKey = new LinkedHashMap<>();
+        for (BenchmarkResult result : baseline) {
+            baselineByKey.put(key(result), result);
+        }
+        int labelWidth = "Benchmark".length();
+        for (BenchmarkResult result : current) {
+            labelWidth = Math.max(labelWidth, result.label().length());
+        }
+        String format = "%-" + labelWidth + "s  %6s  %14s  %14s  %8s  %7s  %s%n";
+        System.out.printf(format, "Benchmark", "Mode", "Baseline", "Current", "Change", "p-value", "Result");
+        int regressions = 0;
+        for (BenchmarkResult result : current) {
+            BenchmarkResult base = baselineByKey.get(key(result));
+            if (base == null) {
+                System.out.printf(
+                        format,
+                        result.label(),
+                        result.mode(),
+                        "-",
+                        "%.3f".formatted(result.score()),
+                        "-",
+                        "-",
+                        "new");
+                continue;
+            }
+            double change = (result.score() - base.score()) / base.score();
+            // only throughput is better when higher
+            double worsening = "thrpt".equals(result.mode()) ? -change : change;
+            double pValue = Statistics.welchTTest(base.samples(), result.samples());
+            boolean significant = pValue < alpha;
+            String verdict;
+            if (Double.isNaN(pValue)) {
+                verdict = "not enough samples";
+            } else if (significant && worsening > threshold) {
+                verdict = isNoisy(base) || isNoisy(result) ? "REGRESSION (noisy environment)" : "REGRESSION";
+                regressions++;
+            } else if (significant && worsening < -threshold) {
+                verdict = "improvement";
+            } else {
+                verdict = "~";
+            }
+            System.out.printf(
+                    format,
+                    result.label(),
+                    result.mode(),
+                    "%.3f".formatted(base.score()),
+                    "%.3f".formatted(result.score()),
+                    "%+.2f%%".formatted(change * 100.0d),
+                    Double.isNaN(pValue) ? "-" : "%.4f".formatted(pValue),
+                    verdict);
+        }
+        System.out.println();
+        return regressions;
+    }
+
+    /**
+     * Whether the result was measured in a noisy environment, according to {@link SystemInfoUtils#checkEnvironment()}.
+     */
+    private static boolean isNoisy(BenchmarkResult result) {
+        Double noise = result.secondary().get("env.noise");
+        return noise != null && noise > SystemInfoUtils.NOISY;
+    }
+
+    private static String key(BenchmarkResult result) {
+        return result.label() + '\t' + result.mode();
+    }
+
+    private ResultComparison() {
+        // this is a utility class
+    }
+}
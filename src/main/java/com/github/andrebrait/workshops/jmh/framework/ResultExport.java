@@ -0,0 +1,373 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes benchmark results to JSON and CSV files, and reads them back from JSON.
+ *
+ * <p>The files are written when the following system properties are set:
+ * <ul>
+ *     <li>{@value #JSON_PROPERTY}: the path of the JSON file</li>
+ *     <li>{@value #CSV_PROPERTY}: the path of the CSV file</li>
+ * </ul>
+ *
+ * <p>When running a benchmark class directly, the files are rewritten after every benchmark with all the results
+ * so far, so they are complete even though the benchmark classes have no explicit end. When running through
+ * {@link ForkedRunner}, they are written once at the end with the results merged across all forks.
+ *
+ * <p>Each result has the name, parameters, mode, score, error (half-width of the 99.9% confidence interval),
+ * unit, the score of each measured iteration and the secondary metrics (e.g. percentiles and bytes allocated
+ * per operation).
+ *
+ * @see ResultComparison
+ */
+public final class ResultExport {
+
+    public static final String JSON_PROPERTY = "bench.json";
+    public static final String CSV_PROPERTY = "bench.csv";
+
+    private static final List<BenchmarkResult> RESULTS = new ArrayList<>();
+
+    /**
+     * Adds a result of a benchmark which ran in this JVM and rewrites the files.
+     */
+    static synchronized void record(BenchmarkResult result) {
+        RESULTS.add(result);
+        write(RESULTS);
+    }
+
+    /**
+     * Writes the results to the files set by the system properties, if any.
+     *
+     * @param results the results to write
+     */
+    public static void write(List<BenchmarkResult> results) {
+        String json = System.getProperty(JSON_PROPERTY);
+        if (json != null) {
+            writeJson(Path.of(json), results);
+        }
+        String csv = System.getProperty(CSV_PROPERTY);
+        if (csv != null) {
+            writeString(Path.of(csv), toCsv(results));
+        }
+    }
+
+    /**
+     * Writes the results to the given file in JSON.
+     *
+     * @param path    the path of the JSON file
+     * @param results the results to write
+     */
+    public static void writeJson(Path path, List<BenchmarkResult> results) {
+        writeString(path, toJson(results));
+    }
+
+    /**
+     * Reads the results from a file previously written by {@link #write(List)} in JSON.
+     *
+     * @param path the path of the JSON file
+     * @return the results in the file
+     */
+    public static List<BenchmarkResult> readJson(Path path) {
+        String json;
+        try {
+            json = Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read %s".formatted(path), e);
+        }
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (Object element : (List<?>) new JsonParser(json).parse()) {
+            Map<?, ?> object = (Map<?, ?>) element;
+            Map<String, String> params = new LinkedHashMap<>();
+            ((Map<?, ?>) object.get("params")).forEach((k, v) -> params.put((String) k, (String) v));
+            List<?> sampleValues = (List<?>) object.get("samples");
+            double[] samples = new double[sampleValues.size()];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (Double) sampleValues.get(i);
+            }
+            Map<String, Double> secondary = new LinkedHashMap<>();
+            ((Map<?, ?>) object.get("secondary")).forEach((k, v) -> secondary.put((String) k, (Double) v));
+            results.add(new BenchmarkResult(
+                    (String) object.get("benchmark"),
+                    params,
+                    (String) object.get("mode"),
+                    (Double) object.get("score"),
+                    (String) object.get("unit"),
+                    samples,
+                    secondary));
+        }
+        return results;
+    }
+
+    static String toJson(List<BenchmarkResult> results) {
+        StringJoiner array = new StringJoiner(",\n", "[\n", "\n]\n");
+        for (BenchmarkResult result : results) {
+            StringJoiner params = new StringJoiner(", ", "{", "}");
+            result.params().forEach((k, v) -> params.add(jsonString(k) + ": " + jsonString(v)));
+            StringJoiner samples = new StringJoiner(", ", "[", "]");
+            for (double sample : result.samples()) {
+                samples.add(jsonNumber(sample));
+            }
+            StringJoiner secondary = new StringJoiner(", ", "{", "}");
+            result.secondary().forEach((k, v) -> secondary.add(jsonString(k) + ": " + jsonNumber(v)));
+            array.add("""
+                      {
+                        "benchmark": %s,
+                        "params": %s,
+                        "mode": %s,
+                        "cnt": %d,
+                        "score": %s,
+                        "error": %s,
+                        "unit": %s,
+                        "samples": %s,
+                        "secondary": %s
+                      }""".formatted(
+                    jsonString(result.name()),
+                    params,
+                    jsonString(result.mode()),
+                    result.samples().length,
+                    jsonNumber(result.score()),
+                    jsonNumber(result.error()),
+                    jsonString(result.unit()),
+                    samples,
+                    secondary));
+        }
+        return array.toString();
+    }
+
+    static String toCsv(List<BenchmarkResult> results) {
+        // the parameters and secondary metrics may differ between benchmarks, so every one of them gets a column
+        Set<String> paramNames = new LinkedHashSet<>();
+        Set<String> secondaryNames = new LinkedHashSet<>();
+        for (BenchmarkResult result : results) {
+            paramNames.addAll(result.params().keySet());
+            secondaryNames.addAll(result.secondary().keySet());
+        }
+        StringBuilder sb = new StringBuilder();
+        StringJoiner header = new StringJoiner(",");
+        for (String column : List.of("Benchmark", "Mode", "Cnt", "Score", "Error (99.9%)", "Unit")) {
+            header.add(csvString(column));
+        }
+        paramNames.forEach(k -> header.add(csvString("Param: " + k)));
+        secondaryNames.forEach(k -> header.add(csvString(k)));
+        sb.append(header).append('\n');
+        for (BenchmarkResult result : results) {
+            StringJoiner row = new StringJoiner(",");
+            row.add(csvString(result.name()));
+            row.add(csvString(result.mode()));
+            row.add(Integer.toString(result.samples().length));
+            row.add(csvNumber(result.score()));
+            row.add(csvNumber(result.error()));
+            row.add(csvString(result.unit()));
+            paramNames.forEach(k -> row.add(result.params().containsKey(k) ? csvString(result.params().get(k)) : ""));
+            secondaryNames.forEach(k -> row.add(csvNumber(result.secondary().getOrDefault(k, Double.NaN))));
+            sb.append(row).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void writeString(Path path, String content) {
+        try {
+            Files.writeString(path, content, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write %s".formatted(path), e);
+        }
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append("\\u%04x".formatted((int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String jsonNumber(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    private static String csvString(String s) {
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static String csvNumber(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "";
+    }
+
+    /**
+     * A minimal JSON parser, just enough to read the files written by this class back. Objects become
+     * {@link Map Maps}, arrays become {@link List Lists}, numbers become {@link Double Doubles} and {@code null}
+     * becomes {@code NaN}.
+     */
+    private static final class JsonParser {
+
+        private final String json;
+        private int position;
+
+        JsonParser(String json) {
+            this.json = json;
+        }
+
+        Object parse() {
+            Object value = value();
+            skipWhitespace();
+            if (position != json.length()) {
+                throw error("end of input");
+            }
+            return value;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            if (position == json.length()) {
+                throw error("a value");
+            }
+            char c = json.charAt(position);
+            if (c == '{') {
+                return object();
+            } else if (c == '[') {
+                return array();
+            } else if (c == '"') {
+                return string();
+            } else if (json.startsWith("null", position)) {
+                position += 4;
+                return Double.NaN;
+            } else if (json.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            } else if (json.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            }
+            return number();
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return object;
+            }
+            do {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect('}');
+            return object;
+        }
+
+        private List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            expect('[');
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return array;
+            }
+            do {
+                array.add(value());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect(']');
+            return array;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (position == json.length()) {
+                    throw error("'\"'");
+                }
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        sb.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> sb.append(escaped);
+                }
+            }
+        }
+
+        private Double number() {
+            int start = position;
+            while (position < json.length() && "+-0123456789.eE".indexOf(json.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("a value");
+            }
+            return Double.parseDouble(json.substring(start, position));
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            return position < json.length() ? json.charAt(position) : '\0';
+        }
+
+        private boolean tryConsume(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!tryConsume(c)) {
+                throw error("'%c'".formatted(c));
+            }
+        }
+
+        private IllegalArgumentException error(String expected) {
+            return new IllegalArgumentException("Invalid JSON: expected %s at position %d".formatted(expected, position));
+        }
+    }
+
+    private ResultExport() {
+        // util class
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.*;
+
+/**
+ * Prints benchmark results as a table, similar to the one printed by JMH at the end of a run, and the summary
+ * of a single result, similar to the one printed by JMH after each benchmark.
+ *
+ * <p>The error is the half-width of the 99.9% confidence interval of the score, based on Student's t-distribution
+ * over the score of each measured iteration (see {@link BenchmarkResult#error()}). It assumes the scores are normally
+ * distributed, so the median, the median absolute deviation (MAD) and the number of outliers are printed as well.
+ */
+final class ResultTable {
+
+    private static final String NOT_APPLICABLE = "N/A";
+
+    /**
+     * Prints the results as a table, with one column per parameter (e.g. {@code (threads)}), like JMH does.
+     */
+    static void print(List<BenchmarkResult> results) {
+        Map<String, Integer> paramWidths = new LinkedHashMap<>();
+        int nameWidth = "Benchmark".length();
+        int scoreWidth = "Score".length();
+        int errorWidth = "Error".length();
+        int unitWidth = "Units".length();
+        for (BenchmarkResult result : results) {
+            result.params().forEach((k, v) -> paramWidths.merge(k, Math.max(k.length() + 2, v.length()), Math::max));
+            nameWidth = Math.max(nameWidth, result.name().length());
+            scoreWidth = Math.max(scoreWidth, "%.3f".formatted(result.score()).length());
+            errorWidth = Math.max(errorWidth, formatError(result.error()).length());
+            unitWidth = Math.max(unitWidth, result.unit().length());
+        }
+        StringBuilder format = new StringBuilder("%-" + nameWidth + "s");
+        List<Object> header = new ArrayList<>(List.of("Benchmark"));
+        paramWidths.forEach((k, width) -> {
+            format.append("  %").append(Math.max(width, NOT_APPLICABLE.length())).append('s');
+            header.add("(" + k + ")");
+        });
+        format.append("  %6s  %4s  %").append(scoreWidth).append("s %1s %").append(errorWidth).append("s  %")
+                .append(unitWidth).append("s%n");
+        header.addAll(List.of("Mode", "Cnt", "Score", "", "Error", "Units"));
+        System.out.printf(format.toString(), header.toArray());
+        for (BenchmarkResult result : results) {
+            List<Object> row = new ArrayList<>(List.of(result.name()));
+            paramWidths.keySet().forEach(k -> row.add(result.params().getOrDefault(k, NOT_APPLICABLE)));
+            row.addAll(List.of(
+                    result.mode(),
+                    result.samples().length,
+                    "%.3f".formatted(result.score()),
+                    Double.isNaN(result.error()) ? "" : "±",
+                    formatError(result.error()),
+                    result.unit()));
+            System.out.printf(format.toString(), row.toArray());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Prints the statistics of a single result.
+     */
+    static void printSummary(BenchmarkResult result) {
+        double[] samples = result.samples();
+        if (samples.length == 0) {
+            return;
+        }
+        double error = result.error();
+        double mean = Statistics.mean(samples, samples.length);
+        System.out.printf("Result \"%s\":%n", result.label());
+        if (Double.isNaN(error)) {
+            System.out.printf("  %.3f %s%n", result.score(), result.unit());
+        } else {
+            System.out.printf("  %.3f ±(99.9%%) %.3f %s%n", result.score(), error, result.unit());
+        }
+        System.out.printf(
+                "  (min, avg, max) = (%.3f, %.3f, %.3f), stdev = %.3f%n",
+                Arrays.stream(samples).min().orElseThrow(),
+                mean,
+                Arrays.stream(samples).max().orElseThrow(),
+                Statistics.standardDeviation(samples, samples.length));
+        if (!Double.isNaN(error)) {
+            System.out.printf(
+                    "  CI (99.9%%): [%.3f, %.3f] (assumes normal distribution)%n",
+                    mean - error,
+                    mean + error);
+        }
+        Statistics.Outliers outliers = Statistics.outliers(samples);
+        System.out.printf(
+                "  median = %.3f, MAD = %.3f, outliers: %d mild, %d severe%n%n",
+                Statistics.median(samples),
+                Statistics.medianAbsoluteDeviation(samples),
+                outliers.mild(),
+                outliers.severe());
+    }
+
+    private static String formatError(double error) {
+        return Double.isNaN(error) ? "" : "%.3f".formatted(error);
+    }
+
+    private ResultTable() {
+        // util class
+    }
+}
@@ -0,0 +1,258 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.Arrays;
+
+/**
+ * Basic statistics over the samples of a benchmark.
+ */
+final class Statistics {
+
+    /**
+     * The mean of the first {@code n} samples.
+     */
+    static double mean(double[] samples, int n) {
+        double sum = 0.0d;
+        for (int i = 0; i < n; i++) {
+            sum += samples[i];
+        }
+        return sum / n;
+    }
+
+    /**
+     * The sample standard deviation of the first {@code n} samples, or {@code NaN} if there are less than two.
+     */
+    static double standardDeviation(double[] samples, int n) {
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = mean(samples, n);
+        double sum = 0.0d;
+        for (int i = 0; i < n; i++) {
+            double d = samples[i] - mean;
+            sum += d * d;
+        }
+        return Math.sqrt(sum / (n - 1));
+    }
+
+    /**
+     * The half-width of the confidence interval of the mean of the first {@code n} samples, based on Student's
+     * t-distribution, or {@code NaN} if there are less than two samples.
+     *
+     * @param samples    the samples
+     * @param n          the number of samples to use
+     * @param confidence the confidence level (e.g. {@code 0.95})
+     */
+    static double confidenceHalfWidth(double[] samples, int n, double confidence) {
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double t = studentTQuantile(1.0d - (1.0d - confidence) / 2.0d, n - 1);
+        return t * standardDeviation(samples, n) / Math.sqrt(n);
+    }
+
+    /**
+     * The median of the samples.
+     */
+    static double median(double[] samples) {
+        return percentile(sorted(samples), 50.0d);
+    }
+
+    /**
+     * The median absolute deviation of the samples: the median of the absolute differences between each sample and
+     * the median. Unlike the standard deviation, it's not inflated by a few outliers.
+     */
+    static double medianAbsoluteDeviation(double[] samples) {
+        double median = median(samples);
+        double[] deviations = new double[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            deviations[i] = Math.abs(samples[i] - median);
+        }
+        return median(deviations);
+    }
+
+    /**
+     * Counts the outliers in the samples using Tukey's fences: samples more than 1.5 times the interquartile range
+     * below the first quartile or above the third quartile are mild outliers, and more than 3 times are severe ones.
+     */
+    static Outliers outliers(double[] samples) {
+        double[] sorted = sorted(samples);
+        double q1 = percentile(sorted, 25.0d);
+        double q3 = percentile(sorted, 75.0d);
+        double iqr = q3 - q1;
+        int mild = 0;
+        int severe = 0;
+        for (double sample : sorted) {
+            if (sample < q1 - 3.0d * iqr || sample > q3 + 3.0d * iqr) {
+                severe++;
+            } else if (sample < q1 - 1.5d * iqr || sample > q3 + 1.5d * iqr) {
+                mild++;
+            }
+        }
+        return new Outliers(mild, severe);
+    }
+
+    /**
+     * The number of outliers in a set of samples.
+     *
+     * @param mild   the number of samples beyond the inner fences
+     * @param severe the number of samples beyond the outer fences
+     */
+    record Outliers(int mild, int severe) {
+    }
+
+    /**
+     * The given percentile of sorted samples, interpolating linearly between the closest ones, or {@code NaN} if
+     * there are no samples.
+     *
+     * @param sorted     the samples, in ascending order
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     */
+    static double percentile(double[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        double position = (sorted.length - 1) * percentile / 100.0d;
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    private static double[] sorted(double[] samples) {
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Welch's t-test: whether two sets of samples have the same mean, without assuming they have the same variance.
+     *
+     * @return the two-sided p-value, or {@code NaN} if either set has less than two samples
+     */
+    static double welchTTest(double[] a, double[] b) {
+        if (a.length < 2 || b.length < 2) {
+            return Double.NaN;
+        }
+        double varianceA = Math.pow(standardDeviation(a, a.length), 2) / a.length;
+        double varianceB = Math.pow(standardDeviation(b, b.length), 2) / b.length;
+        double variance = varianceA + varianceB;
+        double difference = Math.abs(mean(a, a.length) - mean(b, b.length));
+        if (variance == 0.0d) {
+            return difference == 0.0d ? 1.0d : 0.0d;
+        }
+        double t = difference / Math.sqrt(variance);
+        double degreesOfFreedom = (variance * variance)
+                / (varianceA * varianceA / (a.length - 1) + varianceB * varianceB / (b.length - 1));
+        return 2.0d * (1.0d - studentTCdf(t, degreesOfFreedom));
+    }
+
+    /**
+     * The quantile function (inverse of the cumulative distribution function) of Student's t-distribution.
+     *
+     * @param p                the probability, between {@code 0.5} and {@code 1} (exclusive)
+     * @param degreesOfFreedom the degrees of freedom
+     */
+    static double studentTQuantile(double p, int degreesOfFreedom) {
+        if (p < 0.5d || p >= 1.0d) {
+            throw new IllegalArgumentException("Invalid probability: %f. Must be in [0.5, 1)".formatted(p));
+        }
+        if (degreesOfFreedom <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid degrees of freedom: %d. Must be at least 1".formatted(degreesOfFreedom));
+        }
+        // the CDF is monotonic, so bisect it
+        double low = 0.0d;
+        double high = 1.0d;
+        while (studentTCdf(high, degreesOfFreedom) < p) {
+            high *= 2.0d;
+        }
+        for (int i = 0; i < 100 && high - low > 1E-12 * high; i++) {
+            double mid = (low + high) / 2.0d;
+            if (studentTCdf(mid, degreesOfFreedom) < p) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2.0d;
+    }
+
+    /**
+     * The cumulative distribution function of Student's t-distribution, for {@code t >= 0}.
+     */
+    static double studentTCdf(double t, double degreesOfFreedom) {
+        double x = degreesOfFreedom / (degreesOfFreedom + t * t);
+        return 1.0d - 0.5d * regularizedIncompleteBeta(x, degreesOfFreedom / 2.0d, 0.5d);
+    }
+
+    /**
+     * The regularized incomplete beta function I<sub>x</sub>(a, b), evaluated with a continued fraction
+     * (see Numerical Recipes, section 6.4).
+     */
+    private static double regularizedIncompleteBeta(double x, double a, double b) {
+        if (x <= 0.0d) {
+            return 0.0d;
+        }
+        if (x >= 1.0d) {
+            return 1.0d;
+        }
+        double front = Math.exp(
+                logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1.0d - x));
+        if (x < (a + 1.0d) / (a + b + 2.0d)) {
+            return front * betaContinuedFraction(x, a, b) / a;
+        }
+        return 1.0d - front * betaContinuedFraction(1.0d - x, b, a) / b;
+    }
+
+    private static double betaContinuedFraction(double x, double a, double b) {
+        double tiny = 1E-300;
+        double c = 1.0d;
+        double d = 1.0d - (a + b) * x / (a + 1.0d);
+        d = 1.0d / (Math.abs(d) < tiny ? tiny : d);
+        double h = d;
+        for (int m = 1; m <= 300; m++) {
+            int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1.0d) * (a + m2));
+            d = 1.0d + aa * d;
+            d = 1.0d / (Math.abs(d) < tiny ? tiny : d);
+            c = 1.0d + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1.0d));
+            d = 1.0d + aa * d;
+            d = 1.0d / (Math.abs(d) < tiny ? tiny : d);
+            c = 1.0d + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1.0d) < 1E-15) {
+                break;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * The natural logarithm of the gamma function, using the Lanczos approximation.
+     */
+    private static double logGamma(double x) {
+        double[] coefficients = {
+                76.18009172947146d,
+                -86.50532032941677d,
+                24.01409824083091d,
+                -1.231739572450155d,
+                0.1208650973866179E-2d,
+                -0.5395239384953E-5d};
+        double y = x;
+        double tmp = x + 5.5d;
+        tmp -= (x + 0.5d) * Math.log(tmp);
+        double series = 1.000000000190015d;
+        for (double coefficient : coefficients) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005d * series / x);
+    }
+
+    private Statistics() {
+        // util class
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import com.github.andrebrait.workshops.jmh.utils.SystemInfoUtils;
+import com.github.andrebrait.workshops.jmh.utils.SystemInfoUtils.PhysicalCore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs a suite of independent benchmark programs at the same time, each pinned to its own set of physical cores.
+ *
+ * <p>Each job is a {@code main} class (e.g. a JMH benchmark, or a {@link ForkedRunner} running a "naive" one) started
+ * in its own JVM with {@code taskset}, which also pins every JVM it forks. The physical cores are split into disjoint
+ * sets of {@value #DEFAULT_CORES_PER_JOB} or more cores (with all their hardware threads), so no two jobs ever run
+ * on the same core, and the first {@value #DEFAULT_RESERVED_CORES} core is left for the OS and for this runner.
+ * When there are more jobs than sets, they wait for a set to become free.
+ *
+ * <p>Running on separate cores is not the same as running alone: the jobs still share the last level cache, the
+ * memory bandwidth and the power budget (and thus the frequency) of the package, so a warning is printed when
+ * they would. Single-threaded, compute-bound benchmarks are the least affected. The hardware threads of a core
+ * (SMT) are never split between jobs, but the JIT compiler and GC threads of a job can still run on the sibling
+ * of the core running its benchmark thread.
+ *
+ * <p>{@code taskset} is only available on Linux. Anywhere else, the jobs run one at a time.
+ *
+ * <p>The environment is checked once, before starting the jobs (see {@link SystemInfoUtils#checkEnvironment()}),
+ * and its metrics are passed to every job. Checked by each job, the other jobs running at the same time would count
+ * as load, and every result would be flagged as noisy.
+ *
+ * <p>Usage: {@code SuiteRunner "<main class> [args...]"...}, with one argument per job, and the following
+ * (optional) system properties:
+ * <ul>
+ *     <li>{@value #CORES_PER_JOB_PROPERTY}: the number of physical cores per job
+ *     (default: {@value #DEFAULT_CORES_PER_JOB})</li>
+ *     <li>{@value #RESERVED_CORES_PROPERTY}: the number of physical cores not used by any job
+ *     (default: {@value #DEFAULT_RESERVED_CORES})</li>
+ *     <li>{@value #LOG_DIR_PROPERTY}: the directory where the output of each job is written
+ *     (default: {@value #DEFAULT_LOG_DIR})</li>
+ *     <li>{@value ForkedRunner#JVM_ARGS_PROPERTY}: space-separated arguments for the JVM of each job</li>
+ *     <li>{@value ForkedRunner#ENV_CHECK_PROPERTY}: {@code false} to skip checking the environment</li>
+ *     <li>{@value ResultCache#CACHE_PROPERTY}: a directory to store the output of each job in, so the jobs which
+ *     did not change since their last successful run are not run again (see {@link ResultCache})</li>
+ * </ul>
+ *
+ * <p>For example, to run the four variants run by {@code benchRunner.sh 1} at the same time:
+ * {@code SuiteRunner "com.github.andrebrait.workshops.jmh.presentation.SuperDuperBenchmark_Fix1 allan"
+ * "com.github.andrebrait.workshops.jmh.presentation.SuperDuperBenchmark_Fix1 bob" ...}.
+ */
+public final class SuiteRunner {
+
+    public static final String CORES_PER_JOB_PROPERTY = "bench.coresPerJob";
+    public static final int DEFAULT_CORES_PER_JOB = 1;
+    public static final String RESERVED_CORES_PROPERTY = "bench.reservedCores";
+    public static final int DEFAULT_RESERVED_CORES = 1;
+    public static final String LOG_DIR_PROPERTY = "bench.logDir";
+    public static final String DEFAULT_LOG_DIR = "build/suite";
+
+    /**
+     * The outcome of a job.
+     *
+     * @param command  the main class and its arguments
+     * @param cpus     the logical processors the job was pinned to, or {@code "any"}
+     * @param exitCode the exit code of the JVM
+     * @param millis   how long the job took (in milliseconds)
+     * @param log      the file with the output of the job
+     */
+    public record JobResult(List<String> command, String cpus, int exitCode, long millis, Path log) {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Usage: SuiteRunner \"<main class> [args...]\"...");
+        }
+        List<List<String>> jobs = new ArrayList<>();
+        for (String arg : args) {
+            jobs.add(List.of(arg.strip().split(" +")));
+        }
+        String jvmArgs = System.getProperty(ForkedRunner.JVM_ARGS_PROPERTY, "").strip();
+        List<JobResult> results = run(
+                jobs,
+                Integer.getInteger(CORES_PER_JOB_PROPERTY, DEFAULT_CORES_PER_JOB),
+                Integer.getInteger(RESERVED_CORES_PROPERTY, DEFAULT_RESERVED_CORES),
+                jvmArgs.isEmpty() ? List.of() : List.of(jvmArgs.split(" +")),
+                Path.of(System.getProperty(LOG_DIR_PROPERTY, DEFAULT_LOG_DIR)));
+        print(results);
+        if (results.stream().anyMatch(result -> result.exitCode() != 0)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the given jobs, as many at the same time as there are sets of cores for them.
+     *
+     * @param jobs          the main class and arguments of each job
+     * @param coresPerJob   the number of physical cores each job is pinned to
+     * @param reservedCores the number of physical cores not used by any job
+     * @param jvmArgs       additional arguments for the JVM of each job
+     * @param logDir        the directory where the output of each job is written
+     * @return the outcome of each job, in the same order as the jobs
+     */
+    public static List<JobResult> run(
+            List<List<String>> jobs,
+            int coresPerJob,
+            int reservedCores,
+            List<String> jvmArgs,
+            Path logDir) {
+        if (coresPerJob <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid number of cores per job: %d. Must be at least 1".formatted(coresPerJob));
+        }
+        List<String> cpuSets = isTasksetAvailable()
+                ? cpuSets(coresPerJob, reservedCores)
+                : List.of();
+        if (cpuSets.isEmpty()) {
+            System.out.println("WARNING: taskset is not available, so the jobs will run one at a time.");
+        }
+        try {
+            Files.createDirectories(logDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create %s".formatted(logDir), e);
+        }
+        String environment = null;
+        if (!"false".equals(System.getProperty(ForkedRunner.ENV_CHECK_PROPERTY))) {
+            SystemInfoUtils.Environment checked = SystemInfoUtils.checkEnvironment();
+            SystemInfoUtils.printEnvironment(checked);
+            environment = ForkedRunner.encodeMetrics(checked.metrics());
+        }
+        String jobEnvironment = environment;
+        BlockingQueue<String> freeSets = new LinkedBlockingQueue<>(cpuSets.isEmpty() ? List.of("any") : cpuSets);
+        ExecutorService executor = Executors.newFixedThreadPool(freeSets.size());
+        try {
+            List<Future<JobResult>> futures = new ArrayList<>();
+            for (int i = 0; i < jobs.size(); i++) {
+                List<String> job = jobs.get(i);
+                List<String> logName = new ArrayList<>(job);
+                logName.set(0, job.get(0).substring(job.get(0).lastIndexOf('.') + 1));
+                Path log = logDir.resolve("%02d-%s.log".formatted(i + 1, String.join("_", logName)));
+                futures.add(executor.submit(() -> {
+                    String cpus = freeSets.take();
+                    try {
+                        return runJob(job, cpus, jvmArgs, jobEnvironment, log);
+                    } finally {
+                        freeSets.put(cpus);
+                    }
+                }));
+            }
+            List<JobResult> results = new ArrayList<>();
+            for (Future<JobResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the jobs", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not run a job", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits the physical cores into disjoint sets, formatted as {@code taskset} CPU lists, and prints a warning
+     * about anything which could make jobs running at the same time affect each other.
+     */
+    private static List<String> cpuSets(int coresPerJob, int reservedCores) {
+        List<PhysicalCore> cores = SystemInfoUtils.physicalCores();
+        List<PhysicalCore> available = cores.subList(Math.min(Math.max(reservedCores, 0), cores.size()), cores.size());
+        // keep each set in a single package, so a job never shares the cache of two of them
+        Map<Integer, List<PhysicalCore>> coresByPackage = new TreeMap<>();
+        for (PhysicalCore core : available) {
+            coresByPackage.computeIfAbsent(core.packageNumber(), k -> new ArrayList<>()).add(core);
+        }
+        List<String> cpuSets = new ArrayList<>();
+        Set<Integer> efficiencies = new TreeSet<>();
+        boolean smt = false;
+        boolean sharedPackage = false;
+        for (List<PhysicalCore> packageCores : coresByPackage.values()) {
+            int sets = packageCores.size() / coresPerJob;
+            sharedPackage |= sets > 1;
+            for (int s = 0; s < sets; s++) {
+                StringJoiner cpus = new StringJoiner(",");
+                for (PhysicalCore core : packageCores.subList(s * coresPerJob, (s + 1) * coresPerJob)) {
+                    core.logicalProcessors().forEach(cpu -> cpus.add(cpu.toString()));
+                    efficiencies.add(core.efficiency());
+                    smt |= core.logicalProcessors().size() > 1;
+                }
+                cpuSets.add(cpus.toString());
+            }
+        }
+        if (cpuSets.isEmpty()) {
+            throw new IllegalStateException(
+                    "Not enough physical cores for %d cores per job: %d available after reserving %d".formatted(
+                            coresPerJob,
+                            available.size(),
+                            reservedCores));
+        }
+        System.out.printf("Running up to %d jobs at the same time, on CPUs: %s%n", cpuSets.size(), cpuSets);
+        if (smt) {
+            System.out.println(
+                    "WARNING: SMT is enabled. Each job gets all the hardware threads of its cores, but its JIT and GC "
+                            + "threads may run on the sibling of the core running the benchmark and slow it down.");
+        }
+        if (sharedPackage) {
+            System.out.printf(
+                    "WARNING: jobs running on the same package share its cache (%s), memory bandwidth and power "
+                            + "budget. Memory-bound benchmarks may slow each other down.%n",
+                    SystemInfoUtils.lastLevelCache());
+        }
+        if (efficiencies.size() > 1) {
+            System.out.println(
+                    "WARNING: the cores have different efficiency classes (e.g. performance and efficiency cores), "
+                            + "so the results of jobs running on different sets are not comparable.");
+        }
+        return cpuSets;
+    }
+
+    private static JobResult runJob(
+            List<String> job,
+            String cpus,
+            List<String> jvmArgs,
+            String environment,
+            Path log) {
+        Path cachedLog = null;
+        if (ResultCache.isEnabled()) {
+            // the arguments may name the benchmark class actually run, e.g. by a ForkedRunner job
+            cachedLog = ResultCache.file(
+                    ResultCache.fingerprint(job.get(0), job.subList(1, job.size()), jvmArgs),
+                    ".log");
+            if (Files.isRegularFile(cachedLog)) {
+                copy(cachedLog, log);
+                System.out.printf(
+                        "# Unchanged since its last run, reusing its output: %s (output: %s)%n",
+                        String.join(" ", job),
+                        log);
+                return new JobResult(job, "cached", 0, 0L, log);
+            }
+        }
+        List<String> command = new ArrayList<>();
+        if (!cpus.equals("any")) {
+            command.addAll(List.of("taskset", "-c", cpus));
+        }
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        if (environment != null) {
+            // not part of the fingerprint, like anything else about the environment (see ResultCache)
+            command.add("-D%s=%s".formatted(ForkedRunner.ENVIRONMENT_PROPERTY, environment));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(job);
+        System.out.printf("# Started: %s (CPUs: %s)%n", String.join(" ", job), cpus);
+        long start = System.currentTimeMillis();
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(log.toFile())
+                    .start();
+            // the jobs can't be interactive
+            process.getOutputStream().close();
+            int exitCode = process.waitFor();
+            long millis = System.currentTimeMillis() - start;
+            System.out.printf(
+                    "# Finished: %s (exit code: %d, %d s, output: %s)%n",
+                    String.join(" ", job),
+                    exitCode,
+                    millis / 1000L,
+                    log);
+            if (exitCode == 0 && cachedLog != null) {
+                copy(log, cachedLog);
+            }
+            return new JobResult(job, cpus, exitCode, millis, log);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a JVM: %s".formatted(command), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a JVM", e);
+        }
+    }
+
+    private static void copy(Path source, Path target) {
+        try {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not copy %s to %s".formatted(source, target), e);
+        }
+    }
+
+    private static boolean isTasksetAvailable() {
+        if (!System.getProperty("os.name", "").startsWith("Linux")) {
+            return false;
+        }
+        try {
+            return new ProcessBuilder("taskset", "-V")
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start()
+                    .waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void print(List<JobResult> results) {
+        System.out.println();
+        System.out.printf("%-60s  %-16s  %9s  %6s%n", "Job", "CPUs", "Exit code", "Time");
+        for (JobResult result : results) {
+            System.out.printf(
+                    "%-60s  %-16s  %9d  %5ds%n",
+                    String.join(" ", result.command()),
+                    result.cpus(),
+                    result.exitCode(),
+                    result.millis() / 1000L);
+        }
+    }
+
+    private SuiteRunner() {
+        // this is a utility class
+    }
+}
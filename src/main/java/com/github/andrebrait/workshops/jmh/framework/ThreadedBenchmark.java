@@ -0,0 +1,284 @@
+package com.github.andrebrait.workshops.jmh.framework;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Runs the same benchmark on a number of worker threads at the same time.
+ *
+ * <p>All the workers are released together by a start barrier, run until the measurement window closes
+ * and then meet again at an end barrier, so every iteration measures all threads over the same period of time.
+ * Each worker counts its own operations and keeps its own results, so the threads share nothing but the
+ * flag which closes the measurement window.
+ *
+ * @see BenchmarkFramework#benchThreads(String, long, int, int, int, int, BenchRunnable)
+ */
+final class ThreadedBenchmark {
+
+    /**
+     * The code executed by a single thread.
+     */
+    abstract static class Worker {
+
+        /**
+         * Called by the worker thread before every iteration, outside the measurement window.
+         */
+        void prepare() {
+        }
+
+        /**
+         * Runs the benchmarked code a given number of times.
+         */
+        abstract void run(int loop);
+    }
+
+    static final class RunnableWorker extends Worker {
+
+        private final BenchRunnable benchmark;
+
+        RunnableWorker(BenchRunnable benchmark) {
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        void run(int loop) {
+            for (int j = 0; j < loop; j++) {
+                benchmark.run();
+            }
+        }
+    }
+
+    static final class FunctionWorker<A, R> extends Worker {
+
+        private final BenchSupplier<A> argsSupplier;
+        private final BenchFunction<A, R> benchmark;
+        // per-thread result sink, so the results are not discarded and the threads don't write to the same fields
+        private final Blackhole blackhole = new Blackhole();
+        private A args;
+
+        FunctionWorker(BenchSupplier<A> argsSupplier, BenchFunction<A, R> benchmark) {
+            this.argsSupplier = argsSupplier;
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        void prepare() {
+            args = argsSupplier.get();
+        }
+
+        @Override
+        void run(int loop) {
+            for (int j = 0; j < loop; j++) {
+                blackhole.consume(benchmark.apply(args));
+            }
+        }
+    }
+
+    static final class DoubleFunctionWorker<A> extends Worker {
+
+        private final BenchSupplier<A> argsSupplier;
+        private final BenchToDoubleFunction<A> benchmark;
+        // per-thread result sink, consuming the primitive results without boxing them
+        private final Blackhole blackhole = new Blackhole();
+        private A args;
+
+        DoubleFunctionWorker(BenchSupplier<A> argsSupplier, BenchToDoubleFunction<A> benchmark) {
+            this.argsSupplier = argsSupplier;
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        void prepare() {
+            args = argsSupplier.get();
+        }
+
+        @Override
+        void run(int loop) {
+            for (int j = 0; j < loop; j++) {
+                blackhole.consume(benchmark.applyAsDouble(args));
+            }
+        }
+    }
+
+    private final Worker[] workers;
+    private final long[] operations;
+    private final long[] durations;
+    private final IterationProbe[] probes;
+    private final CyclicBarrier start;
+    private final CyclicBarrier end;
+    private final int loop;
+    private final Thread controller = Thread.currentThread();
+    private volatile boolean stop;
+    private volatile boolean shutdown;
+    private volatile Throwable failure;
+
+    private ThreadedBenchmark(int loop, Worker[] workers) {
+        this.loop = loop;
+        this.workers = workers;
+        this.operations = new long[workers.length];
+        this.durations = new long[workers.length];
+        this.probes = new IterationProbe[workers.length];
+        for (int t = 0; t < workers.length; t++) {
+            probes[t] = new IterationProbe();
+        }
+        this.start = new CyclicBarrier(workers.length + 1);
+        this.end = new CyclicBarrier(workers.length + 1);
+    }
+
+    /**
+     * Runs a benchmark on one thread per worker and print the statistics.
+     *
+     * @param name      the name of the benchmark (for display purposes)
+     * @param runMillis the duration of the benchmark (in milliseconds)
+     * @param loop      the number of times to execute the benchmarked code between checks for the end of the run,
+     *                  or {@link BenchmarkFramework#AUTO_LOOP}
+     * @param warmup    how many runs to execute before taking measurements
+     * @param repeat    how many times to repeat the benchmark in total (after the warmup)
+     * @param workers   the workers, one per thread
+     */
+    static void run(String name, long runMillis, int loop, int warmup, int repeat, Worker[] workers) {
+        if (workers.length == 0) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        if (!ForkedRunner.isIncluded(name)) {
+            return;
+        }
+        if (loop == BenchmarkFramework.AUTO_LOOP) {
+            // calibrated on the current thread, before the workers are started
+            Worker worker = workers[0];
+            worker.prepare();
+            loop = Calibration.loop(() -> worker.run(1));
+        }
+        new ThreadedBenchmark(loop, workers).run(name, runMillis, warmup, repeat);
+    }
+
+    private void run(String name, long runMillis, int warmup, int repeat) {
+        int threads = workers.length;
+        System.out.printf("Running: %s (%d threads)%n", name, threads);
+        Thread[] workerThreads = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workerThreads[t] = new Thread(() -> work(index), "%s-worker-%d".formatted(name, t));
+            workerThreads[t].setDaemon(true);
+            workerThreads[t].start();
+        }
+        double averageThroughput = 0.0d;
+        double[] averageThreadThroughput = new double[threads];
+        double averageBytesPerOp = 0.0d;
+        Iterations iterations = new Iterations(warmup, repeat);
+        // JIT compilation and GC are tracked for the whole JVM, allocation is tracked by each worker
+        IterationProbe probe = new IterationProbe();
+        try {
+            while (iterations.hasNext()) {
+                stop = false;
+                probe.start();
+                start.await();
+                Thread.sleep(runMillis);
+                stop = true;
+                end.await();
+                probe.stop(1L);
+                double throughput = 0.0d;
+                long totalOperations = 0L;
+                double allocatedBytes = 0.0d;
+                StringJoiner perThread = new StringJoiner(", ", "[", "]");
+                boolean benchRun = !iterations.isWarmup();
+                for (int t = 0; t < threads; t++) {
+                    double threadThroughput = (operations[t] * 1E6) / durations[t];
+                    throughput += threadThroughput;
+                    totalOperations += operations[t];
+                    allocatedBytes += probes[t].bytesPerOp() * operations[t];
+                    perThread.add("%.0f".formatted(threadThroughput));
+                    if (benchRun) {
+                        averageThreadThroughput[t] += threadThroughput;
+                    }
+                }
+                double bytesPerOp = allocatedBytes / totalOperations;
+                if (benchRun) {
+                    averageThroughput += throughput;
+                    averageBytesPerOp += bytesPerOp;
+                }
+                System.out.printf(
+                        "%.0f ops/ms (%.2f ns/op per thread%s%s) %s ops/ms per thread%s%n",
+                        throughput,
+                        (threads * 1E6) / throughput,
+                        IterationProbe.formatBytesPerOp(bytesPerOp),
+                        probe.contamination() + probe.hardwareSummary(),
+                        perThread,
+                        (!benchRun ? " (warmup) | " : " | "));
+                iterations.completed(throughput, probe);
+            }
+            shutdown = true;
+            start.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            stop = true;
+            shutdown = true;
+            for (Thread workerThread : workerThreads) {
+                workerThread.interrupt();
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Benchmark %s failed".formatted(name), failure);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running %s".formatted(name), e);
+        }
+        averageThroughput /= iterations.measured();
+        averageBytesPerOp /= iterations.measured();
+        StringJoiner perThread = new StringJoiner(", ", "[", "]");
+        for (int t = 0; t < threads; t++) {
+            perThread.add("%.0f".formatted(averageThreadThroughput[t] / iterations.measured()));
+        }
+        iterations.printWarnings();
+        System.out.printf(
+                "[ ~%.0f ops/ms (%.2f ns/op per thread%s) %s ops/ms per thread ]%n%n",
+                averageThroughput,
+                (threads * 1E6) / averageThroughput,
+                IterationProbe.formatBytesPerOp(averageBytesPerOp),
+                perThread);
+        Map<String, Double> secondary = new LinkedHashMap<>();
+        secondary.put("ops/ms per thread", averageThroughput / threads);
+        BenchmarkFramework.putBytesPerOp(secondary, averageBytesPerOp);
+        ForkedRunner.report(new BenchmarkResult(
+                name,
+                Map.of("threads", Integer.toString(threads)),
+                "thrpt",
+                averageThroughput,
+                "ops/ms",
+                iterations.samples(),
+                secondary));
+    }
+
+    private void work(int index) {
+        Worker worker = workers[index];
+        IterationProbe probe = probes[index];
+        try {
+            while (true) {
+                worker.prepare();
+                start.await();
+                if (shutdown) {
+                    return;
+                }
+                long numOperations = 0L;
+                probe.start();
+                long begin = System.nanoTime();
+                do {
+                    worker.run(loop);
+                    numOperations += loop;
+                } while (!stop);
+                durations[index] = System.nanoTime() - begin;
+                probe.stop(numOperations);
+                operations[index] = numOperations;
+                end.await();
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            // the benchmark was aborted
+        } catch (Throwable t) {
+            if (!shutdown) {
+                failure = t;
+                controller.interrupt();
+            }
+        }
+    }
+}
@@ -2,29 +2,27 @@ package com.github.andrebrait.workshops.jmh.presentation;
 
 import com.github.andrebrait.workshops.jmh.framework.BenchToDoubleFunction;
 import com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework;
+import com.github.andrebrait.workshops.jmh.framework.Blackhole;
 
 import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.*;
 import static com.github.andrebrait.workshops.jmh.utils.InputUtils.select;
 
 /**
  * "Naive" benchmark with just static methods which can only execute one test at a time and
- * has "random" parameters, with the result being consumed in a "blackhole" so the compiler
- * can't remove the invocation altogether. This version also avoids the costs of boxing/unboxing,
- * but it runs into a combination of inlining, unrolling and dead-code elimination with some escape
- * analysis around the fact it's a primitive instead of an object.
+ * has "random" parameters, with the result being consumed in a {@link Blackhole} so the compiler
+ * can't remove the invocation altogether. This version also avoids the costs of boxing/unboxing.
+ * <p>
+ * Storing the result in a primitive field instead runs into a combination of inlining, unrolling and
+ * dead-code elimination, as only the last value stored is ever read, and storing it in a {@code Double}
+ * field only avoids that by paying for the boxing. The {@link Blackhole} is the fix: it uses every result
+ * without boxing it, so each invocation must be computed and nothing is allocated.
  * <p>
- * Honestly, I have no idea.
  * One more reason not to code your own benchmarks.
  */
 public final class SuperDuperBenchmark_Fix5 {
 
-    /*
-     * If we make this a primitive, some crazy optimization is gonna kick in!
-     * For allan, this gets reverted if the loop unrolling is prevented.
-     *
-     * This behavior is observed both on macOS ARM64 and on Windows x86-64.
-     */
-    private static Double last = 0.0d;
+    // consumes every result without boxing it, so neither the boxing nor dead-code elimination skew the results
+    private static final Blackhole BLACKHOLE = new Blackhole();
 
     public static void main(String[] args) {
         //SystemInfoUtils.printSystemInfo();
@@ -44,8 +42,7 @@ public final class SuperDuperBenchmark_Fix5 {
                 WARMUP,
                 REPEAT,
                 Operands::random,
-                r -> last = r,
+                BLACKHOLE::consume,
                 benchmarkMethod);
-        System.out.printf("Last result: %f%n%n", last);
     }
 }
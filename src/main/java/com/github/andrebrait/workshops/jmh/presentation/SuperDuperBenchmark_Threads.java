@@ -0,0 +1,47 @@
+package com.github.andrebrait.workshops.jmh.presentation;
+
+import com.github.andrebrait.workshops.jmh.framework.BenchToDoubleFunction;
+
+import static com.github.andrebrait.workshops.jmh.framework.BenchmarkFramework.*;
+import static com.github.andrebrait.workshops.jmh.utils.InputUtils.select;
+
+/**
+ * "Naive" benchmark which runs one solution at a time on an increasing number of threads,
+ * from a single thread up to one thread per available processor.
+ */
+public final class SuperDuperBenchmark_Threads {
+
+    public static void main(String[] args) {
+        //SystemInfoUtils.printSystemInfo();
+        BenchmarkName benchmark = args.length == 1 ?
+                BenchmarkName.valueOf(args[0]) :
+                select("Select a benchmark to run:", BenchmarkName.class);
+        BenchToDoubleFunction<Operands> benchmarkMethod = switch (benchmark) {
+            case allan -> o -> Solutions.allan(o.x1(), o.y1(), o.x2(), o.y2());
+            case bob -> o -> Solutions.bob(o.x1(), o.y1(), o.x2(), o.y2());
+            case joe -> o -> Solutions.joe(o.x1(), o.y1(), o.x2(), o.y2());
+            case steve -> o -> Solutions.steve(o.x1(), o.y1(), o.x2(), o.y2());
+        };
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            benchThreadsDouble(
+                    benchmark.name(),
+                    RUN_MILLIS,
+                    LOOP,
+                    WARMUP,
+                    REPEAT,
+                    threads,
+                    Operands::random,
+                    benchmarkMethod);
+        }
+        benchThreadsDouble(
+                benchmark.name(),
+                RUN_MILLIS,
+                LOOP,
+                WARMUP,
+                REPEAT,
+                processors,
+                Operands::random,
+                benchmarkMethod);
+    }
+}
@@ -1,13 +1,44 @@
 package com.github.andrebrait.workshops.jmh.utils;
 
 import oshi.SystemInfo;
+import oshi.hardware.CentralProcessor;
+import oshi.hardware.HardwareAbstractionLayer;
+import oshi.hardware.VirtualMemory;
+import oshi.software.os.OSProcess;
+import oshi.software.os.OperatingSystem;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public final class SystemInfoUtils {
 
     /**
-     * Prints some information about the JVM, CPU and OS
+     * Above this noise score, the results of a benchmark are likely to be affected by the environment.
+     */
+    public static final double NOISY = 2.0d;
+
+    private static final long LOAD_SAMPLE_MILLIS = 1000L;
+    private static final double BUSY_PROCESS_LOAD = 0.1d;
+    private static final double HOT_CPU_CELSIUS = 80.0d;
+
+    /**
+     * The state of the machine which may add noise to the results of a benchmark.
+     *
+     * @param noise    how noisy the machine is: {@code 0} is quiet, and anything above {@link #NOISY} is likely
+     *                 to affect the results
+     * @param metrics  the metrics the noise was calculated from (e.g. {@code env.cpuLoad}), keyed by their names,
+     *                 with {@code NaN} for the ones not available in this OS
+     * @param warnings a description of each source of noise found
+     */
+    public record Environment(double noise, Map<String, Double> metrics, List<String> warnings) {
+    }
+
+    /**
+     * Prints some information about the JVM, CPU and OS, followed by the result of {@link #checkEnvironment()}
      */
     public static void printSystemInfo() {
         System.out.printf(
@@ -36,6 +67,223 @@ public final class SystemInfoUtils {
                 "OS info:%n%s%n%n",
                 info.getOperatingSystem().toString().lines().map("\t"::concat).collect(
                         Collectors.joining(System.lineSeparator())));
+        printEnvironment(checkEnvironment());
+    }
+
+    /**
+     * Checks how noisy the machine is, to be done right before running benchmarks. It takes about a second, as it
+     * measures the CPU load of the whole system and of each process.
+     *
+     * <p>Each of the following adds to the noise score:
+     * <ul>
+     *     <li>the CPU load of other processes: up to {@code 10} when they keep all CPUs busy</li>
+     *     <li>a 1-minute load average above half the number of CPUs: {@code 1}</li>
+     *     <li>a CPU frequency governor other than {@code performance} (Linux only): {@code 1}</li>
+     *     <li>turbo boost enabled, which makes the frequency depend on the temperature and on the load of the
+     *     other cores (Linux only): {@code 1}</li>
+     *     <li>a CPU temperature above {@value #HOT_CPU_CELSIUS} °C, at which it may be throttled: {@code 2}</li>
+     *     <li>swap in use, as any page fault to it takes milliseconds: {@code 1}</li>
+     * </ul>
+     */
+    public static Environment checkEnvironment() {
+        SystemInfo info = new SystemInfo();
+        HardwareAbstractionLayer hardware = info.getHardware();
+        CentralProcessor processor = hardware.getProcessor();
+        OperatingSystem os = info.getOperatingSystem();
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        List<String> warnings = new ArrayList<>();
+        double noise = 0.0d;
+
+        Map<Integer, OSProcess> processesBefore = new HashMap<>();
+        for (OSProcess process : os.getProcesses()) {
+            processesBefore.put(process.getProcessID(), process);
+        }
+        long[] ticks = processor.getSystemCpuLoadTicks();
+        try {
+            Thread.sleep(LOAD_SAMPLE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while measuring the CPU load", e);
+        }
+        double cpuLoad = processor.getSystemCpuLoadBetweenTicks(ticks);
+        int processors = processor.getLogicalProcessorCount();
+        List<String> busy = new ArrayList<>();
+        double ownLoad = 0.0d;
+        for (OSProcess process : os.getProcesses()) {
+            OSProcess before = processesBefore.get(process.getProcessID());
+            if (before == null) {
+                continue;
+            }
+            // relative to a single CPU, so multithreaded processes can go over 100%
+            double load = process.getProcessCpuLoadBetweenTicks(before);
+            if (process.getProcessID() == os.getProcessId()) {
+                ownLoad = load / processors;
+            } else if (load > BUSY_PROCESS_LOAD) {
+                busy.add("%s (pid %d, %.0f%%)".formatted(process.getName(), process.getProcessID(), load * 100.0d));
+            }
+        }
+        double otherLoad = Math.max(cpuLoad - ownLoad, 0.0d);
+        metrics.put("env.cpuLoad", otherLoad);
+        noise += otherLoad * 10.0d;
+        if (!busy.isEmpty()) {
+            warnings.add("busy processes: %s".formatted(String.join(", ", busy)));
+        }
+
+        double loadAverage = processor.getSystemLoadAverage(1)[0];
+        metrics.put("env.loadAverage", loadAverage < 0.0d ? Double.NaN : loadAverage);
+        if (loadAverage > processors / 2.0d) {
+            noise += 1.0d;
+            warnings.add("1-minute load average is %.2f for %d CPUs".formatted(loadAverage, processors));
+        }
+
+        Set<String> governors = new TreeSet<>();
+        for (Path governor : sysFiles("/sys/devices/system/cpu", "cpu[0-9]*", "cpufreq/scaling_governor")) {
+            String value = readSysFile(governor);
+            if (value != null) {
+                governors.add(value);
+            }
+        }
+        boolean performance = governors.equals(Set.of("performance"));
+        metrics.put("env.performanceGovernor", governors.isEmpty() ? Double.NaN : performance ? 1.0d : 0.0d);
+        if (!governors.isEmpty() && !performance) {
+            noise += 1.0d;
+            warnings.add("CPU frequency governor is %s instead of performance".formatted(governors));
+        }
+
+        Boolean turbo = turbo();
+        metrics.put("env.turbo", turbo == null ? Double.NaN : turbo ? 1.0d : 0.0d);
+        if (Boolean.TRUE.equals(turbo)) {
+            noise += 1.0d;
+            warnings.add("turbo boost is enabled");
+        }
+
+        double temperature = hardware.getSensors().getCpuTemperature();
+        // OSHI returns 0 when the temperature is not available
+        metrics.put("env.cpuTemperature", temperature > 0.0d ? temperature : Double.NaN);
+        if (temperature > HOT_CPU_CELSIUS) {
+            noise += 2.0d;
+            warnings.add("CPU temperature is %.1f °C".formatted(temperature));
+        }
+
+        VirtualMemory virtualMemory = hardware.getMemory().getVirtualMemory();
+        double swapUsedMiB = virtualMemory.getSwapUsed() / (1024.0d * 1024.0d);
+        metrics.put("env.swapUsedMiB", swapUsedMiB);
+        if (virtualMemory.getSwapUsed() > 0L) {
+            noise += 1.0d;
+            warnings.add("%.0f MiB of swap in use".formatted(swapUsedMiB));
+        }
+
+        metrics.put("env.noise", noise);
+        return new Environment(noise, metrics, warnings);
+    }
+
+    /**
+     * Prints the result of {@link #checkEnvironment()}.
+     */
+    public static void printEnvironment(Environment environment) {
+        System.out.printf(
+                "Environment noise: %.2f (%s)%n",
+                environment.noise(),
+                environment.noise() > NOISY ? "noisy, the results may vary" : "quiet");
+        for (String warning : environment.warnings()) {
+            System.out.printf("\t%s%n", warning);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Whether turbo boost is enabled, or {@code null} if unknown.
+     */
+    private static Boolean turbo() {
+        // intel_pstate driver
+        String noTurbo = readSysFile(Path.of("/sys/devices/system/cpu/intel_pstate/no_turbo"));
+        if (noTurbo != null) {
+            return noTurbo.equals("0");
+        }
+        // acpi-cpufreq and others
+        String boost = readSysFile(Path.of("/sys/devices/system/cpu/cpufreq/boost"));
+        return boost == null ? null : boost.equals("1");
+    }
+
+    /**
+     * Lists the files with the given name inside the directories matching a glob, e.g. one per CPU.
+     */
+    private static List<Path> sysFiles(String parent, String glob, String name) {
+        List<Path> files = new ArrayList<>();
+        Path directory = Path.of(parent);
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path path : stream) {
+                files.add(path.resolve(name));
+            }
+        } catch (IOException e) {
+            // not available, e.g. in a container
+        }
+        return files;
+    }
+
+    private static String readSysFile(Path path) {
+        try {
+            return Files.isReadable(path) ? Files.readString(path).strip() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A physical core and its logical processors (hardware threads).
+     *
+     * @param packageNumber     the physical package (socket) the core is in
+     * @param efficiency        the efficiency class of the core on hybrid CPUs (higher is faster), {@code 0} otherwise
+     * @param logicalProcessors the numbers the OS uses for its logical processors (e.g. in {@code taskset})
+     */
+    public record PhysicalCore(int packageNumber, int efficiency, List<Integer> logicalProcessors) {
+    }
+
+    /**
+     * Lists the physical cores of the CPU, sorted by package and then by their first logical processor.
+     */
+    public static List<PhysicalCore> physicalCores() {
+        CentralProcessor processor = new SystemInfo().getHardware().getProcessor();
+        Map<String, Integer> efficiencies = new HashMap<>();
+        for (CentralProcessor.PhysicalProcessor core : processor.getPhysicalProcessors()) {
+            efficiencies.put(
+                    core.getPhysicalPackageNumber() + ":" + core.getPhysicalProcessorNumber(),
+                    core.getEfficiency());
+        }
+        Map<String, PhysicalCore> cores = new LinkedHashMap<>();
+        for (CentralProcessor.LogicalProcessor logical : processor.getLogicalProcessors()) {
+            String key = logical.getPhysicalPackageNumber() + ":" + logical.getPhysicalProcessorNumber();
+            cores.computeIfAbsent(key, k -> new PhysicalCore(
+                            logical.getPhysicalPackageNumber(),
+                            efficiencies.getOrDefault(k, 0),
+                            new ArrayList<>()))
+                    .logicalProcessors()
+                    .add(logical.getProcessorNumber());
+        }
+        List<PhysicalCore> sorted = new ArrayList<>(cores.values());
+        sorted.sort(Comparator.comparingInt(PhysicalCore::packageNumber)
+                .thenComparingInt(core -> core.logicalProcessors().get(0)));
+        return sorted;
+    }
+
+    /**
+     * Describes the largest (usually last level) cache of the CPU, which is shared by the cores of a package,
+     * e.g. {@code "L3 32768 KiB"}, or returns {@code "unknown"} if the cache information is not available.
+     */
+    public static String lastLevelCache() {
+        CentralProcessor processor = new SystemInfo().getHardware().getProcessor();
+        CentralProcessor.ProcessorCache lastLevel = null;
+        for (CentralProcessor.ProcessorCache cache : processor.getProcessorCaches()) {
+            if (lastLevel == null || cache.getLevel() > lastLevel.getLevel()) {
+                lastLevel = cache;
+            }
+        }
+        return lastLevel == null
+                ? "unknown"
+                : "L%d %d KiB".formatted(lastLevel.getLevel(), Integer.toUnsignedLong(lastLevel.getCacheSize()) / 1024L);
     }
 
     private SystemInfoUtils() {
@@ -0,0 +1,187 @@
+package com.github.andrebrait.workshops.jmh.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Generates a dedicated measurement loop for each method annotated with {@code @NaiveBenchmark}, and a class
+ * with a {@code main} method running all the benchmarks of each class.
+ *
+ * <p>This lives in its own source set, as it must be compiled before the code it processes. For the same reason,
+ * it refers to the annotation and to the framework classes by name only.
+ */
+@SupportedAnnotationTypes(NaiveBenchmarkProcessor.ANNOTATION)
+@SupportedSourceVersion(SourceVersion.RELEASE_17)
+public final class NaiveBenchmarkProcessor extends AbstractProcessor {
+
+    static final String FRAMEWORK_PACKAGE = "com.github.andrebrait.workshops.jmh.framework";
+    static final String ANNOTATION = FRAMEWORK_PACKAGE + ".NaiveBenchmark";
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            // keyed by the enclosing class, in declaration order
+            Map<TypeElement, List<ExecutableElement>> methodsByClass = new LinkedHashMap<>();
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                ExecutableElement method = (ExecutableElement) element;
+                if (isValid(method)) {
+                    methodsByClass.computeIfAbsent((TypeElement) method.getEnclosingElement(), k -> new ArrayList<>())
+                            .add(method);
+                }
+            }
+            methodsByClass.forEach(this::generate);
+        }
+        return true;
+    }
+
+    private boolean isValid(ExecutableElement method) {
+        String error = null;
+        Set<Modifier> modifiers = method.getModifiers();
+        if (!modifiers.contains(Modifier.STATIC)) {
+            error = "must be static";
+        } else if (modifiers.contains(Modifier.PRIVATE)) {
+            error = "must not be private";
+        } else if (!method.getParameters().isEmpty()) {
+            error = "must not take any arguments";
+        } else if (!method.getTypeParameters().isEmpty()) {
+            error = "must not be generic";
+        } else if (method.getEnclosingElement().getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+            error = "must be declared in a top-level class";
+        }
+        if (error != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@NaiveBenchmark method " + error, method);
+            return false;
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type, List<ExecutableElement> methods) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String className = type.getSimpleName().toString();
+        StringBuilder runs = new StringBuilder();
+        for (ExecutableElement method : methods) {
+            String loopName = "%s_%s_NaiveLoop".formatted(className, method.getSimpleName());
+            writeLoop(type, method, packageName, className, loopName);
+            Map<String, Object> values = annotationValues(method);
+            String name = (String) values.get("name");
+            runs.append("""
+                            BenchmarkFramework.bench(
+                                    "%s",
+                                    %dL,
+                                    %d,
+                                    %d,
+                                    %d,
+                                    new %s());
+                    """.formatted(
+                    escape(name.isEmpty() ? method.getSimpleName().toString() : name),
+                    (Long) values.get("runMillis"),
+                    (Integer) values.get("loop"),
+                    (Integer) values.get("warmup"),
+                    (Integer) values.get("repeat"),
+                    loopName));
+        }
+        String runnerName = className + "_NaiveBenchmarks";
+        write(type, packageName, runnerName, """
+                import %s.BenchmarkFramework;
+
+                /**
+                 * Runs the benchmarks declared in {@link %s}.
+                 */
+                @Generated("%s")
+                public final class %s {
+
+                    public static void main(String[] args) {
+                %s    }
+
+                    private %s() {
+                        // this is a utility class
+                    }
+                }
+                """.formatted(FRAMEWORK_PACKAGE, className, getClass().getName(), runnerName, runs, runnerName));
+    }
+
+    private void writeLoop(
+            TypeElement type,
+            ExecutableElement method,
+            String packageName,
+            String className,
+            String loopName) {
+        String call = "%s.%s()".formatted(className, method.getSimpleName());
+        String statement = method.getReturnType().getKind() == TypeKind.VOID
+                ? call
+                : "blackhole.consume(%s)".formatted(call);
+        write(type, packageName, loopName, """
+                import %1$s.BenchLoop;
+                import %1$s.Blackhole;
+
+                /**
+                 * The measurement loop for {@link %2$s#%3$s()}.
+                 */
+                @Generated("%4$s")
+                final class %5$s implements BenchLoop {
+
+                    @Override
+                    public long run(long runMillis, int loop, Blackhole blackhole) {
+                        long numOperations = 0L;
+                        long duration = 0L;
+                        long start = System.currentTimeMillis();
+                        do {
+                            for (int j = 0; j < loop; j++) {
+                                %6$s;
+                                numOperations++;
+                            }
+                            duration = System.currentTimeMillis() - start;
+                        } while (duration < runMillis);
+                        return numOperations;
+                    }
+                }
+                """.formatted(
+                FRAMEWORK_PACKAGE,
+                className,
+                method.getSimpleName(),
+                getClass().getName(),
+                loopName,
+                statement));
+    }
+
+    private void write(TypeElement type, String packageName, String simpleName, String body) {
+        try (PrintWriter writer = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(packageName + '.' + simpleName, type)
+                .openWriter())) {
+            writer.printf("package %s;%n%n", packageName);
+            writer.printf("import javax.annotation.processing.Generated;%n");
+            writer.print(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write %s.%s".formatted(packageName, simpleName), e);
+        }
+    }
+
+    /**
+     * The values of the annotation on the given method, including the default ones, keyed by their names.
+     */
+    private Map<String, Object> annotationValues(ExecutableElement method) {
+        Map<String, Object> values = new HashMap<>();
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(ANNOTATION)) {
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror)
+                        .forEach((k, v) -> values.put(k.getSimpleName().toString(), v.getValue()));
+            }
+        }
+        return values;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}